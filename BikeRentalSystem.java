@@ -6,40 +6,70 @@ import java.io.*;
 import java.nio.file.*;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.List;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 
 public class BikeRentalSystem extends JFrame {
-    private Bike[] bikes = new Bike[50];
-    private Customer[] customers = new Customer[50];
-    private Rental[] rentals = new Rental[200];
+    private final RentalPolicy rentalPolicy = new SimplePolicy();
+    private final Runnable footerChanged = coalescedOnEdt(this::updateFooter);
+    private final Runnable tilesChanged = coalescedOnEdt(this::updateTiles);
+    private final Fleet fleet = new Fleet(Branch.open(rentalPolicy, footerChanged, coalescedOnEdt(() -> { updateOverdue(); updateTiles(); })));
+    private final Map<Branch, LiveStats> live = new HashMap<>();
 
-    private int bikeCount = 0;
-    private int custCount = 0;
-    private int rentCount = 0;
+    // The branch picked in the header; every dialog works on it.
+    private Branch branch;
+    private DataStore store;
+    private RentalEngine engine;
+    private RentalAnalytics analytics;
+    private OverdueScheduler overdue;
+    private RentalArchive archive;
+    private PersistenceWriter writer;
 
-    private final RentalPolicy rentalPolicy = new SimplePolicy();
+    static final String BIKES_FILE = "bikes.txt";
+    static final String CUSTOMERS_FILE = "customers.txt";
+    static final String RENTALS_FILE = "rentals.txt";
+    private static final String RESERVATIONS_FILE = "reservations.txt";
+    static final String JOURNAL_FILE = "rentals.journal";
+    static final String SNAPSHOT_FILE = "snapshot.bin";
+    static final String ARCHIVE_DIR = "archive";
+    private static final String BRANCHES_DIR = "branches";
+    // The working directory: the home branch's files and the shared customers.txt.
+    static final Path HOME = Paths.get("");
+    static final int COMPACT_EVERY = Integer.getInteger("bikerental.compactEvery", 500);
 
-    private static final String BIKES_FILE = "bikes.txt";
-    private static final String CUSTOMERS_FILE = "customers.txt";
-    private static final String RENTALS_FILE = "rentals.txt";
+    private JComboBox<Branch> branchBox;
 
     private JPanel root;
+    private JLabel footer;
+    private JLabel overdueLabel;
+    private JLabel availableTile, rentedTile, overdueTile, revenueTile, fleetTile, customersTile;
+    private JPanel footerBar;
+    private JProgressBar loadProgress;
+    private final List<JButton> dataButtons = new ArrayList<>();
+    private volatile boolean ready;
+    private boolean failureShown;
+
+    static long launchNanos = System.nanoTime();
+
+    // Every "today" in the rental rules comes from this clock; the simulator runs it through simulated days.
+    static volatile java.time.Clock clock = java.time.Clock.systemDefaultZone();
+
+    static int today() { return (int) LocalDate.now(clock).toEpochDay(); }
 
     public BikeRentalSystem() {
         super("Bike Rental System — Kashmir");
         setDefaultCloseOperation(EXIT_ON_CLOSE);
-        setSize(820, 560);
+        setSize(820, 640);
         setLocationRelativeTo(null);
         setIconImage(createAppIcon());
         installUIFont();
 
-        loadAll();
-
         root = new ShawlWatermarkPanel();
         root.setLayout(new BorderLayout());
         root.setBorder(new EmptyBorder(12, 12, 12, 12));
         setContentPane(root);
+        selectBranch(fleet.home());
 
         JPanel header = new MountainsBannerPanel();
         header.setPreferredSize(new Dimension(800, 140));
@@ -57,6 +87,22 @@ public class BikeRentalSystem extends JFrame {
         titleBox.add(title);
         titleBox.add(subtitle);
         header.add(titleBox, BorderLayout.WEST);
+        branchBox = new JComboBox<>(fleet.branches.toArray(new Branch[0]));
+        branchBox.setEnabled(false);
+        branchBox.addActionListener(e -> {
+            selectBranch((Branch) branchBox.getSelectedItem());
+            updateFooter();
+            updateOverdue();
+            updateTiles();
+        });
+        JPanel branchBar = new JPanel(new FlowLayout(FlowLayout.RIGHT, 6, 0));
+        branchBar.setOpaque(false);
+        branchBar.setBorder(new EmptyBorder(16, 0, 0, 20));
+        JLabel branchLabel = new JLabel("Branch");
+        branchLabel.setForeground(Color.WHITE);
+        branchBar.add(branchLabel);
+        branchBar.add(branchBox);
+        header.add(branchBar, BorderLayout.EAST);
         root.add(header, BorderLayout.NORTH);
 
         JPanel centerCard = new JPanel();
@@ -73,114 +119,314 @@ public class BikeRentalSystem extends JFrame {
         JButton rentBtn = new RoundedButton("Rent a Bike", bikeIcon);
         JButton returnBtn = new RoundedButton("Return Bike", bikeIcon);
         JButton recordsBtn = new RoundedButton("View Records", bikeIcon);
+        JButton reservationsBtn = new RoundedButton("Reservations", bikeIcon);
 
         buttonGrid.add(registerBtn);
         buttonGrid.add(showBikesBtn);
         buttonGrid.add(rentBtn);
         buttonGrid.add(returnBtn);
         buttonGrid.add(recordsBtn);
+        buttonGrid.add(reservationsBtn);
+        for (JButton b : new JButton[]{registerBtn, showBikesBtn, rentBtn, returnBtn, recordsBtn, reservationsBtn}) {
+            b.setEnabled(false);
+            dataButtons.add(b);
+        }
+
+        JPanel liveTiles = new RoundedCardPanel();
+        liveTiles.setLayout(new GridLayout(1, 4, 10, 0));
+        liveTiles.setBorder(new EmptyBorder(12, 18, 12, 18));
+        availableTile = new JLabel("—");
+        rentedTile = new JLabel("—");
+        overdueTile = new JLabel("—");
+        revenueTile = new JLabel("—");
+        fleetTile = new JLabel(" ");
+        customersTile = new JLabel(" ");
+        liveTiles.add(tile("Available", availableTile, fleetTile));
+        liveTiles.add(tile("Rented", rentedTile, customersTile));
+        liveTiles.add(tile("Overdue", overdueTile, new JLabel("past their due date")));
+        liveTiles.add(tile("Today's revenue", revenueTile, new JLabel("from returns")));
+        for (Component c : liveTiles.getComponents()) ((JComponent) c).setOpaque(false);
 
         GridBagConstraints gbc = new GridBagConstraints();
         gbc.gridx = 0; gbc.gridy = 0; gbc.weightx = 1; gbc.weighty = 1; gbc.fill = GridBagConstraints.NONE;
         centerCard.add(buttonGrid, gbc);
+        gbc.gridy = 1; gbc.weighty = 0; gbc.fill = GridBagConstraints.HORIZONTAL; gbc.insets = new Insets(10, 0, 0, 0);
+        centerCard.add(liveTiles, gbc);
         root.add(centerCard, BorderLayout.CENTER);
 
-        JLabel footer = new JLabel("Data auto-saves after every action", SwingConstants.CENTER);
+        footer = new JLabel("Loading bikes, customers and rentals…", SwingConstants.CENTER);
         footer.setBorder(new EmptyBorder(6, 0, 0, 0));
-        root.add(footer, BorderLayout.SOUTH);
+        loadProgress = new JProgressBar(0, 4 * fleet.branches.size());
+        loadProgress.setPreferredSize(new Dimension(160, 10));
+        footerBar = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
+        footerBar.setOpaque(false);
+        footerBar.add(footer);
+        overdueLabel = new JLabel();
+        overdueLabel.setForeground(new Color(180, 30, 30));
+        overdueLabel.setFont(overdueLabel.getFont().deriveFont(Font.BOLD));
+        overdueLabel.setVisible(false);
+        footerBar.add(overdueLabel);
+        footerBar.add(loadProgress);
+        root.add(footerBar, BorderLayout.SOUTH);
 
         registerBtn.addActionListener(e -> registerCustomer());
         showBikesBtn.addActionListener(e -> showBikes());
         rentBtn.addActionListener(e -> rentBike());
         returnBtn.addActionListener(e -> returnBike());
         recordsBtn.addActionListener(e -> viewRecords());
+        reservationsBtn.addActionListener(e -> showReservations());
+
+        addWindowListener(new WindowAdapter() {
+            @Override public void windowOpened(WindowEvent e) {
+                System.out.printf(Locale.ROOT, "Startup: first frame after %d ms%n", (System.nanoTime() - launchNanos) / 1_000_000);
+            }
+            @Override public void windowClosing(WindowEvent e) { if (ready) fleet.close(10_000); }
+        });
+        RentalEngine.Listener footerUpdater = new RentalEngine.Listener() {
+            @Override public void registered(Customer c) { footerChanged.run(); }
+            @Override public void rented(Rental r) { footerChanged.run(); }
+            @Override public void returned(Rental r) { footerChanged.run(); }
+            @Override public void reserved(Reservation v) { footerChanged.run(); }
+            @Override public void cancelled(Reservation v) { footerChanged.run(); }
+        };
+        for (Branch b : fleet.branches) {
+            b.engine.addListener(footerUpdater);
+            LiveStats stats = new LiveStats(tilesChanged);
+            live.put(b, stats);
+            b.engine.events().subscribe(stats);
+            b.engine.events().subscribe(e -> { if (e instanceof EventBus.CustomerRegistered) tilesChanged.run(); });
+        }
+    }
+
+    // Runs update on the EDT once for however many calls arrive before it gets there, so a burst costs one repaint.
+    static Runnable coalescedOnEdt(Runnable update) {
+        java.util.concurrent.atomic.AtomicBoolean queued = new java.util.concurrent.atomic.AtomicBoolean();
+        return () -> {
+            if (queued.compareAndSet(false, true)) SwingUtilities.invokeLater(() -> {
+                queued.set(false);
+                update.run();
+            });
+        };
+    }
+
+    private void updateTiles() {
+        if (!ready) return;
+        LiveStats stats = live.get(branch);
+        availableTile.setText(String.format(Locale.ROOT, "%,d", stats.available()));
+        rentedTile.setText(String.format(Locale.ROOT, "%,d", stats.rented()));
+        overdueTile.setText(String.format(Locale.ROOT, "%,d", overdue.overdueCount()));
+        overdueTile.setForeground(overdue.overdueCount() > 0 ? new Color(180, 30, 30) : UIManager.getColor("Label.foreground"));
+        revenueTile.setText(String.format(Locale.ROOT, "₹%,d", stats.revenueToday()));
+        fleetTile.setText(String.format(Locale.ROOT, "of %,d bikes", stats.available() + stats.rented()));
+        customersTile.setText(String.format(Locale.ROOT, "%,d customers", store.customerCount()));
     }
 
-    private void loadAll() {
+    private void selectBranch(Branch b) {
+        branch = b;
+        store = b.store;
+        engine = b.engine;
+        analytics = b.analytics;
+        overdue = b.overdue;
+        archive = b.archive;
+        writer = b.writer;
+    }
+
+    private void startLoading() {
+        Thread loader = new Thread(() -> {
+            Metrics.install();
+            fleet.load(() -> SwingUtilities.invokeLater(() -> loadProgress.setValue(loadProgress.getValue() + 1)));
+            SwingUtilities.invokeLater(this::dataReady);
+            fleet.home().store.indexCustomers();
+        }, "bikerental-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void dataReady() {
+        fleet.start();
+        for (Branch b : fleet.branches) live.get(b).reset(b.store, b.analytics);
+        ready = true;
+        for (JButton b : dataButtons) b.setEnabled(true);
+        branchBox.setEnabled(true);
+        footerBar.remove(loadProgress);
+        footerBar.revalidate();
+        footer.setText("Data auto-saves after every action");
+        updateTiles();
+        int rentals = 0;
+        for (Branch b : fleet.branches) rentals += b.store.rentalCount();
+        System.out.printf(Locale.ROOT, "Startup: data ready after %d ms (%d branches, %,d bikes, %,d customers, %,d rentals)%n",
+                (System.nanoTime() - launchNanos) / 1_000_000, fleet.branches.size(), fleet.bikeCount(), store.customerCount(), rentals);
+    }
+
+    // -Dbikerental.jdbcUrl switches every branch to the database; otherwise each keeps its flat files in dir.
+    static Storage openStorage(Path dir, String branch, boolean home) {
+        String url = System.getProperty("bikerental.jdbcUrl", "");
+        return url.isEmpty() ? new FlatFileStorage(dir, home) : new JdbcStorage(url, branch.toLowerCase(Locale.ROOT), home);
+    }
+
+    // Storage that writes each record as rows has no use for the journal.
+    static RentalJournal openJournal(Path dir, Storage storage) {
+        return !storage.takesRecords() && Boolean.parseBoolean(System.getProperty("bikerental.journal", "true"))
+                ? new RentalJournal(dir.resolve(JOURNAL_FILE)) : null;
+    }
+
+    // customerWriter is the home branch's writer when this one belongs to another branch, otherwise null.
+    static PersistenceWriter newWriter(Storage storage, DataStore store, RentalJournal journal, RentalArchive archive,
+                                       PersistenceWriter customerWriter, Runnable listener) {
+        return new PersistenceWriter(store, storage, journal, archive, customerWriter, COMPACT_EVERY,
+                Long.getLong("bikerental.syncMillis", 1000L), listener);
+    }
+
+    static RentalArchive openArchive(Path dir) {
+        return new RentalArchive(dir.resolve(ARCHIVE_DIR), Integer.getInteger("bikerental.archiveAfterDays", 180));
+    }
+
+    // The home branch also loads the shared customers and gets the default bikes when it has none.
+    static void loadAll(Storage storage, boolean home, DataStore store, RentalJournal journal, PersistenceWriter writer, Runnable stageDone) {
+        boolean loaded = true;
         try {
-            loadBikes();
-            loadCustomers();
-            loadRentals();
-        } catch (Exception ignore) {}
+            storage.load(store, stageDone);
+        } catch (IOException e) {
+            Metrics.count("load.failures", 1);
+            System.err.println(e.getMessage());
+            writer.loadFailed(e);
+            loaded = false;
+        }
+        if (journal != null) journal.replay(store);
+        store.syncAvailability();
+        stageDone.run();
+
+        // After a failed load the files may still hold bikes, so they are not replaced with the preloaded ones.
+        if (home && loaded && store.bikeCount() == 0) {
+            loadDefaultBikes(store);
+            writer.markDirty(PersistenceWriter.Dirty.BIKES);
+        }
+    }
+
+    static Path[] sourceFiles(Path dir, boolean home) {
+        return home ? new Path[]{dir.resolve(BIKES_FILE), dir.resolve(CUSTOMERS_FILE), dir.resolve(RENTALS_FILE)}
+                : new Path[]{dir.resolve(BIKES_FILE), dir.resolve(RENTALS_FILE)};
+    }
 
-        if (bikeCount == 0) {
-            loadDefaultBikes();
-            saveBikes();
+    private static void loadText(Path dir, boolean home, DataStore store, Runnable stageDone) throws IOException {
+        DataStore bikes = new DataStore(), customers = new DataStore(), rentals = new DataStore();
+        java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(3);
+        try {
+            List<java.util.concurrent.Future<?>> parts = Arrays.asList(
+                    pool.submit(() -> { loadBikes(dir.resolve(BIKES_FILE), bikes); stageDone.run(); return null; }),
+                    pool.submit(() -> { if (home) loadCustomers(dir.resolve(CUSTOMERS_FILE), customers); stageDone.run(); return null; }),
+                    pool.submit(() -> { loadRentals(dir.resolve(RENTALS_FILE), rentals); stageDone.run(); return null; }));
+            for (java.util.concurrent.Future<?> part : parts) part.get();
+        } catch (java.util.concurrent.ExecutionException e) {
+            // Nothing is adopted, so the store never mixes finished and half-read parts; loadAll counts and logs it.
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException("Loading " + dir + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Loading " + dir + " was interrupted");
+        } finally {
+            pool.shutdown();
         }
+        store.adopt(bikes, home ? customers : null, rentals);
     }
 
-    private void loadBikes() {
-        bikeCount = 0;
-        Path p = Paths.get(BIKES_FILE);
+    static void loadBikes(Path p, DataStore store) throws IOException {
+        long t0 = System.nanoTime();
+        store.clearBikes();
         if (!Files.exists(p)) return;
-        try (BufferedReader br = Files.newBufferedReader(p)) {
+        try (LineNumberReader br = new LineNumberReader(Files.newBufferedReader(p))) {
             String line;
             while ((line = br.readLine()) != null) {
                 if (line.trim().isEmpty() || line.startsWith("#")) continue;
                 String[] parts = line.split("\\|");
-                if (parts.length >= 5) {
-                    String id = parts[0];
-                    String model = parts[1];
-                    int rate = Integer.parseInt(parts[2]);
-                    boolean available = Boolean.parseBoolean(parts[3]);
-                    Bike b = new Bike(id, model, rate);
-                    b.setAvailable(available);
-                    bikes[bikeCount++] = b;
+                if (parts.length >= 4) {
+                    try {
+                        String id = parts[0];
+                        String model = parts[1];
+                        int rate = Integer.parseInt(parts[2]);
+                        boolean available = Boolean.parseBoolean(parts[3]);
+                        Bike b = new Bike(id, model, rate);
+                        b.setAvailable(available);
+                        store.addBike(b);
+                    } catch (RuntimeException e) {
+                        throw badLine(p, br.getLineNumber(), e);
+                    }
                 }
             }
-        } catch (Exception ignored) {}
+        }
+        Metrics.loaded("load.bikes", t0, store.bikeCount());
     }
 
-    private void saveBikes() {
-        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(Paths.get(BIKES_FILE)))) {
+    static void writeBikes(Path p, DataStore store) throws IOException {
+        long t0 = System.nanoTime();
+        Path tmp = tempFile(p);
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(tmp))) {
             pw.println("# id|model|rate|available");
-            for (int i = 0; i < bikeCount; i++) {
-                Bike b = bikes[i];
+            for (Bike b : store.bikes()) {
                 pw.printf(Locale.ROOT, "%s|%s|%d|%b%n", b.getBikeId(), b.getModel(), b.getRate(), b.isAvailable());
             }
-        } catch (IOException ignored) {}
+            if (pw.checkError()) throw new IOException("Could not write " + tmp);
+        }
+        replaceFile(tmp, p);
+        Metrics.saved("save.bikes", t0, p);
     }
 
-    private void loadCustomers() {
-        custCount = 0;
-        Path p = Paths.get(CUSTOMERS_FILE);
+    static void loadCustomers(Path p, DataStore store) throws IOException {
+        long t0 = System.nanoTime();
+        store.clearCustomers();
         if (!Files.exists(p)) return;
-        try (BufferedReader br = Files.newBufferedReader(p)) {
+        try (LineNumberReader br = new LineNumberReader(Files.newBufferedReader(p))) {
             String line;
             while ((line = br.readLine()) != null) {
                 if (line.trim().isEmpty() || line.startsWith("#")) continue;
                 String[] parts = line.split("\\|");
                 if (parts.length >= 4) {
-                    String id = parts[0];
-                    String name = parts[1];
-                    int age = Integer.parseInt(parts[2]);
-                    String lic = parts[3];
-                    customers[custCount++] = new Customer(id, name, age, lic);
+                    try {
+                        String id = parts[0];
+                        String name = parts[1];
+                        int age = Integer.parseInt(parts[2]);
+                        String lic = parts[3];
+                        store.addCustomer(new Customer(id, name, age, lic));
+                    } catch (RuntimeException e) {
+                        throw badLine(p, br.getLineNumber(), e);
+                    }
                 }
             }
-        } catch (Exception ignored) {}
+        }
+        Metrics.loaded("load.customers", t0, store.customerCount());
     }
 
-    private void saveCustomers() {
-        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(Paths.get(CUSTOMERS_FILE)))) {
+    static void writeCustomers(Path p, DataStore store) throws IOException {
+        long t0 = System.nanoTime();
+        Path tmp = tempFile(p);
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(tmp))) {
             pw.println("# id|name|age|license");
-            for (int i = 0; i < custCount; i++) {
-                Customer c = customers[i];
+            for (Customer c : store.customers()) {
                 pw.printf(Locale.ROOT, "%s|%s|%d|%s%n", c.getId(), escape(c.getName()), c.getAge(), c.getLicense());
             }
-        } catch (IOException ignored) {}
+            if (pw.checkError()) throw new IOException("Could not write " + tmp);
+        }
+        replaceFile(tmp, p);
+        Metrics.saved("save.customers", t0, p);
     }
 
-    private void loadRentals() {
-        rentCount = 0;
-        Path p = Paths.get(RENTALS_FILE);
+    static void loadRentals(Path p, DataStore store) throws IOException {
+        long t0 = System.nanoTime();
+        store.clearRentals();
         if (!Files.exists(p)) return;
         try (BufferedReader br = Files.newBufferedReader(p)) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.trim().isEmpty() || line.startsWith("#")) continue;
-                String[] parts = line.split("\\|");
-                if (parts.length >= 10) {
+            readRentals(br, store, p);
+        }
+        Metrics.loaded("load.rentals", t0, store.rentalCount());
+    }
+
+    static void readRentals(BufferedReader in, DataStore store, Path source) throws IOException {
+        LineNumberReader br = new LineNumberReader(in, 1 << 16);
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.trim().isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\\|", -1);
+            if (parts.length >= 10) {
+                try {
                     String rid = parts[0];
                     String bid = parts[1];
                     String cid = parts[2];
@@ -191,38 +437,147 @@ public class BikeRentalSystem extends JFrame {
                     boolean returned = Boolean.parseBoolean(parts[7]);
                     String startDate = parts[8];
                     String returnDate = parts[9];
-                    Rental r = new Rental(rid, bid, cid, days, baseRent);
-                    r.damageFee = damageFee;
-                    r.total = total;
-                    r.returned = returned;
-                    r.startDate = startDate;
-                    r.returnDate = returnDate;
-                    rentals[rentCount++] = r;
+                    store.addRental(rid, bid, cid, days, baseRent, damageFee, total, returned, startDate, returnDate);
+                } catch (RuntimeException e) {
+                    throw badLine(source, br.getLineNumber(), e);
+                }
+            }
+        }
+    }
+
+    // A line that doesn't parse fails the whole load: the store would otherwise hold only the lines before it,
+    // and the next save would write that back over the file.
+    static IOException badLine(Path p, int lineNumber, RuntimeException e) {
+        return new IOException(p + " line " + lineNumber + ": " + e, e);
+    }
+
+    static void writeRentals(Path p, DataStore store) throws IOException {
+        long t0 = System.nanoTime();
+        Path tmp = tempFile(p);
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(tmp))) {
+            printRentals(pw, store.rentals());
+            if (pw.checkError()) throw new IOException("Could not write " + tmp);
+        }
+        replaceFile(tmp, p);
+        Metrics.saved("save.rentals", t0, p);
+    }
+
+    static void loadReservations(Path p, DataStore store) throws IOException {
+        long t0 = System.nanoTime();
+        store.clearReservations();
+        if (!Files.exists(p)) return;
+        try (LineNumberReader br = new LineNumberReader(Files.newBufferedReader(p))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\\|");
+                if (parts.length >= 5) {
+                    int start = RentalColumns.parseDay(parts[3]);
+                    boolean added;
+                    try {
+                        added = start > RentalColumns.NO_DATE
+                                && store.addReservation(new Reservation(parts[0], parts[1], parts[2], start, Integer.parseInt(parts[4])), false);
+                    } catch (RuntimeException e) {
+                        throw badLine(p, br.getLineNumber(), e);
+                    }
+                    if (!added) Metrics.count("load.failures", 1);
                 }
             }
-        } catch (Exception ignored) {}
+        }
+        Metrics.loaded("load.reservations", t0, store.reservationCount());
+    }
+
+    // Reservations that ended before today without being picked up are dropped here.
+    static void writeReservations(Path p, DataStore store) throws IOException {
+        long t0 = System.nanoTime();
+        int today = today();
+        Path tmp = tempFile(p);
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(tmp))) {
+            pw.println("# id|bikeId|customerId|startDate|days");
+            for (Reservation v : store.reservations()) {
+                if (v.endDay() <= today) continue;
+                pw.printf(Locale.ROOT, "%s|%s|%s|%s|%d%n", v.reservationId(), v.bikeId(), v.customerId(), v.startDate(), v.days());
+            }
+            if (pw.checkError()) throw new IOException("Could not write " + tmp);
+        }
+        replaceFile(tmp, p);
+        Metrics.saved("save.reservations", t0, p);
+    }
+
+    static Path tempFile(Path p) {
+        return p.resolveSibling(p.getFileName() + ".tmp");
+    }
+
+    // The new file is on disk before it replaces the old one, so a crash mid-save leaves one or the other, never half.
+    static void replaceFile(Path tmp, Path p) throws IOException {
+        PersistenceWriter.force(tmp);
+        Files.move(tmp, p, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static void printRentals(PrintWriter pw, Iterable<Rental> rentals) {
+        pw.println("# rid|bikeId|customerId|days|baseRent|damageFee|total|returned|startDate|returnDate");
+        for (Rental r : rentals) {
+            pw.printf(Locale.ROOT, "%s|%s|%s|%d|%d|%d|%d|%b|%s|%s%n",
+                    r.rentalId(), r.bikeId(), r.customerId(), r.days(), r.baseRent(), r.damageFee(),
+                    r.total(), r.returned(), r.startDate(), r.returnDate());
+        }
     }
 
-    private void saveRentals() {
-        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(Paths.get(RENTALS_FILE)))) {
-            pw.println("# rid|bikeId|customerId|days|baseRent|damageFee|total|returned|startDate|returnDate");
-            for (int i = 0; i < rentCount; i++) {
-                Rental r = rentals[i];
-                pw.printf(Locale.ROOT, "%s|%s|%s|%d|%d|%d|%d|%b|%s|%s%n",
-                        r.rentalId, r.bikeId, r.customerId, r.days, r.baseRent, r.damageFee,
-                        r.total, r.returned, r.startDate, r.returnDate);
+    private void updateOverdue() {
+        List<String> late = overdue.overdue();
+        overdueLabel.setVisible(!late.isEmpty());
+        overdueLabel.setText(late.size() + (late.size() == 1 ? " rental overdue" : " rentals overdue"));
+        overdueLabel.setToolTipText(late.isEmpty() ? null : String.join(", ", late.subList(0, Math.min(20, late.size())))
+                + (late.size() > 20 ? ", …" : ""));
+    }
+
+    private void updateFooter() {
+        if (footer == null) return;
+        long at = 0, pending = 0;
+        IOException failure = null;
+        boolean loading = false;
+        for (Branch b : fleet.branches) {
+            at = Math.max(at, b.writer.lastCommit());
+            pending += b.writer.pending();
+            if (failure == null) {
+                failure = b.writer.lastFailure();
+                loading = failure != null && failure == b.writer.loadFailure();
+            }
+        }
+        String saved = at == 0 ? "not yet saved" : "last saved " + java.time.Instant.ofEpochMilli(at)
+                .atZone(java.time.ZoneId.systemDefault()).toLocalTime().withNano(0);
+        if (failure == null) {
+            failureShown = false;
+            footer.setForeground(UIManager.getColor("Label.foreground"));
+            footer.setText("Data auto-saves after every action • " + saved + " • " + pending + " queued");
+            footer.setToolTipText(null);
+        } else {
+            footer.setForeground(new Color(180, 30, 30));
+            footer.setText((loading ? "Load failed, data files are not saved: " : "Save failed: ") + failure.getMessage()
+                    + " • " + saved + " • " + pending + " queued");
+            footer.setToolTipText(failure.toString());
+            if (!failureShown) {
+                failureShown = true;
+                if (loading) {
+                    JOptionPane.showMessageDialog(this, "Could not load data:\n" + failure.getMessage()
+                            + "\nThe data files are left as they are; changes go to the journal only. Fix the file and restart.",
+                            "Load Failed", JOptionPane.ERROR_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(this, "Could not save data:\n" + failure.getMessage()
+                            + "\nChanges are kept and will be retried.", "Save Failed", JOptionPane.WARNING_MESSAGE);
+                }
             }
-        } catch (IOException ignored) {}
+        }
     }
 
     private static String escape(String v) {
         return v.replace("|", "/");
     }
 
-    private void loadDefaultBikes() {
-        bikes[bikeCount++] = new Bike("B101", "Royal Enfield Classic 350", 900);
-        bikes[bikeCount++] = new Bike("B102", "Pulsar 180", 700);
-        bikes[bikeCount++] = new Bike("B103", "Apache RTR", 650);
+    private static void loadDefaultBikes(DataStore store) {
+        store.addBike(new Bike("B101", "Royal Enfield Classic 350", 900));
+        store.addBike(new Bike("B102", "Pulsar 180", 700));
+        store.addBike(new Bike("B103", "Apache RTR", 650));
     }
 
     private void registerCustomer() {
@@ -236,12 +591,7 @@ public class BikeRentalSystem extends JFrame {
             String name = nameF.getText().trim();
             int age = Integer.parseInt(ageF.getText().trim());
             String license = licF.getText().trim();
-            Customer newCust = new Customer("C" + (custCount + 1), name, age, license);
-            if (!rentalPolicy.eligible(newCust)) {
-                throw new InvalidLicenseException("Age should be at least 18 and license must be valid.");
-            }
-            customers[custCount++] = newCust;
-            saveCustomers();
+            Customer newCust = engine.register(name, age, license);
             JOptionPane.showMessageDialog(this, "Customer Registered:\n" + newCust.basicInfo());
         } catch (Exception ex) {
             JOptionPane.showMessageDialog(this, ex.getMessage());
@@ -249,82 +599,542 @@ public class BikeRentalSystem extends JFrame {
     }
 
     private void showBikes() {
-        StringBuilder sb = new StringBuilder("Available Bikes:\n\n");
-        for (int i = 0; i < bikeCount; i++) sb.append(bikes[i]).append("\n");
-        JTextArea area = new JTextArea(sb.toString(), 14, 40);
-        area.setEditable(false);
-        area.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
-        JScrollPane sp = new JScrollPane(area);
-        sp.setPreferredSize(new Dimension(540, 320));
-        JOptionPane.showMessageDialog(this, sp, "Bikes", JOptionPane.PLAIN_MESSAGE);
+        ListTableModel<Bike> model = new ListTableModel<Bike>("Bike ID", "Model", "Rate/day", "Status") {
+            @Override Object value(Bike b, int column) {
+                switch (column) {
+                    case 0: return b.getBikeId();
+                    case 1: return b.getModel();
+                    case 2: return "₹" + b.getRate();
+                    default: return b.isAvailable() ? "Available" : "Rented";
+                }
+            }
+            @Override Comparator<Bike> comparator(int column) {
+                switch (column) {
+                    case 0: return Comparator.comparing(Bike::getBikeId, ListTableModel::compareIds);
+                    case 1: return Comparator.comparing(Bike::getModel);
+                    case 2: return Comparator.comparingInt(Bike::getRate);
+                    default: return Comparator.comparing(Bike::isAvailable);
+                }
+            }
+        };
+        model.setRows(store.bikes());
+        JTable table = sortableTable(model);
+        JTextField search = new JTextField(14);
+        JComboBox<String> status = new JComboBox<>(new String[]{"All", "Available", "Rented"});
+        JTextField from = new JTextField(8);
+        from.setToolTipText("yyyy-mm-dd: only bikes free for these days");
+        JTextField days = new JTextField("1", 2);
+        JButton reserve = new JButton("Reserve…");
+        JLabel count = new JLabel();
+        Runnable apply = () -> {
+            String q = search.getText().trim();
+            String st = (String) status.getSelectedItem();
+            int start = RentalColumns.parseDay(from.getText().trim()), n = parseDays(days.getText());
+            Set<Bike> free = start > RentalColumns.NO_DATE && n > 0
+                    ? Collections.newSetFromMap(new IdentityHashMap<>()) : null;
+            if (free != null) free.addAll(store.freeBikes(start, start + n));
+            model.setFilter(b -> (q.isEmpty() || containsIgnoreCase(b.getBikeId(), q) || containsIgnoreCase(b.getModel(), q))
+                    && ("All".equals(st) || b.isAvailable() == "Available".equals(st)) && (free == null || free.contains(b)), false);
+            reserve.setEnabled(free != null);
+            count.setText(model.getRowCount() + " of " + model.totalRows() + " bikes" + (free == null ? "" : " free those days"));
+        };
+        onEdit(search, apply);
+        onEdit(from, apply);
+        onEdit(days, apply);
+        status.addActionListener(e -> apply.run());
+        reserve.addActionListener(e -> {
+            int row = table.getSelectedRow();
+            if (row < 0) { JOptionPane.showMessageDialog(table, "Select a bike first."); return; }
+            Bike b = model.rowAt(row);
+            Customer c = chooseCustomer();
+            if (c == null) return;
+            try {
+                Reservation v = engine.reserve(c.getLicense(), b.getBikeId(), RentalColumns.parseDay(from.getText().trim()), parseDays(days.getText()));
+                JOptionPane.showMessageDialog(table, "Reserved " + b.getBikeId() + " for " + c.getName()
+                        + "\nReservation ID: " + v.reservationId() + "\n" + v.startDate() + " to " + v.lastDate());
+                apply.run();
+            } catch (RentalException ex) {
+                JOptionPane.showMessageDialog(table, ex.getMessage());
+            }
+        });
+        apply.run();
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        filters.add(new JLabel("Search:"));
+        filters.add(search);
+        filters.add(status);
+        filters.add(new JLabel("Free from:"));
+        filters.add(from);
+        filters.add(new JLabel("days:"));
+        filters.add(days);
+        filters.add(reserve);
+        filters.add(count);
+        JOptionPane.showMessageDialog(this, tableView(table, filters, 760, 320), "Bikes", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    private static int parseDays(String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void showReservations() {
+        ListTableModel<Reservation> model = new ListTableModel<Reservation>("Reservation", "Bike", "Customer", "From", "To", "Days") {
+            @Override Object value(Reservation v, int column) {
+                switch (column) {
+                    case 0: return v.reservationId();
+                    case 1: return v.bikeId();
+                    case 2: { Customer c = store.findCustomerById(v.customerId()); return c == null ? v.customerId() : c.getName(); }
+                    case 3: return v.startDate();
+                    case 4: return v.lastDate();
+                    default: return v.days();
+                }
+            }
+            @Override Comparator<Reservation> comparator(int column) {
+                switch (column) {
+                    case 0: return Comparator.comparing(Reservation::reservationId, ListTableModel::compareIds);
+                    case 1: return Comparator.comparing(Reservation::bikeId, ListTableModel::compareIds);
+                    case 2: return Comparator.comparing(v -> String.valueOf(value(v, 2)));
+                    case 4: return Comparator.comparingInt(Reservation::endDay);
+                    case 5: return Comparator.comparingInt(Reservation::days);
+                    default: return Comparator.comparingInt(Reservation::startDay);
+                }
+            }
+        };
+        JTable table = sortableTable(model);
+        JButton cancel = new JButton("Cancel reservation");
+        JLabel count = new JLabel();
+        Runnable reload = () -> {
+            model.setRows(store.reservations());
+            count.setText(model.getRowCount() + " reservations");
+        };
+        cancel.addActionListener(e -> {
+            int row = table.getSelectedRow();
+            if (row < 0) { JOptionPane.showMessageDialog(table, "Select a reservation first."); return; }
+            try {
+                engine.cancelReservation(model.rowAt(row).reservationId());
+                reload.run();
+            } catch (RentalException ex) {
+                JOptionPane.showMessageDialog(table, ex.getMessage());
+            }
+        });
+        reload.run();
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        filters.add(cancel);
+        filters.add(count);
+        JOptionPane.showMessageDialog(this, tableView(table, filters, 560, 320), "Reservations", JOptionPane.PLAIN_MESSAGE);
     }
 
     private void rentBike() {
-        String license = JOptionPane.showInputDialog(this, "Enter Customer License:");
-        Customer c = findCustomer(license);
+        Customer c = chooseCustomer();
         if (c == null) { JOptionPane.showMessageDialog(this, "Customer not found."); return; }
-        String bikeId = JOptionPane.showInputDialog(this, "Enter Bike ID:");
+        String license = c.getLicense();
+        String bikeId = JOptionPane.showInputDialog(this, "Enter Bike ID for " + c.getName() + ":");
         Bike b = findBike(bikeId);
+        if (b == null && bikeId != null) {
+            Branch at = fleet.branchOfBike(bikeId);
+            if (at != null) { JOptionPane.showMessageDialog(this, "Bike " + bikeId + " is at " + at + "."); return; }
+        }
         if (b == null || !b.isAvailable()) { JOptionPane.showMessageDialog(this, "Bike not available."); return; }
         int days = Integer.parseInt(JOptionPane.showInputDialog(this, "Days for rent:"));
-        int baseCost = b.getRate() * days;
-        Rental r = new Rental("R" + (rentCount + 1), bikeId, c.getId(), days, baseCost);
-        rentals[rentCount++] = r;
-        b.setAvailable(false);
-        saveBikes();
-        saveRentals();
-        JOptionPane.showMessageDialog(this, "Bike Rented\nRental ID: " + r.rentalId + "\nTotal Cost: ₹" + baseCost);
+        try {
+            Rental r = engine.rent(license, bikeId, days);
+            JOptionPane.showMessageDialog(this, "Bike Rented\nRental ID: " + r.rentalId() + "\nTotal Cost: ₹" + r.baseRent());
+        } catch (RentalException ex) {
+            JOptionPane.showMessageDialog(this, ex.getMessage());
+        }
+    }
+
+    // License field with matches by license or name listed below it; a picked match wins over the typed text.
+    private Customer chooseCustomer() {
+        JTextField query = new JTextField(24);
+        DefaultListModel<Customer> matches = new DefaultListModel<>();
+        JList<Customer> list = new JList<>(matches);
+        list.setVisibleRowCount(8);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override public Component getListCellRendererComponent(JList<?> l, Object value, int index, boolean selected, boolean focus) {
+                Customer c = (Customer) value;
+                return super.getListCellRendererComponent(l, c.getLicense() + "  —  " + c.getName() + " (" + c.getId() + ")", index, selected, focus);
+            }
+        });
+        onEdit(query, 0, () -> {
+            matches.clear();
+            for (Customer c : store.searchCustomers(query.getText(), 8)) matches.addElement(c);
+        });
+        query.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), "nextMatch");
+        query.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_UP, 0), "previousMatch");
+        query.getActionMap().put("nextMatch", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent e) { list.setSelectedIndex(Math.min(list.getSelectedIndex() + 1, matches.size() - 1)); }
+        });
+        query.getActionMap().put("previousMatch", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent e) { list.setSelectedIndex(Math.max(list.getSelectedIndex() - 1, -1)); }
+        });
+        query.addAncestorListener(new javax.swing.event.AncestorListener() {
+            @Override public void ancestorAdded(javax.swing.event.AncestorEvent e) { query.requestFocusInWindow(); }
+            @Override public void ancestorRemoved(javax.swing.event.AncestorEvent e) { }
+            @Override public void ancestorMoved(javax.swing.event.AncestorEvent e) { }
+        });
+        JScrollPane scroll = new JScrollPane(list);
+        scroll.setPreferredSize(new Dimension(380, 170));
+        Object[] msg = {"Customer license or name:", query, scroll};
+        int ok = JOptionPane.showConfirmDialog(this, msg, "Rent a Bike", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (ok != JOptionPane.OK_OPTION) return null;
+        Customer picked = list.getSelectedValue();
+        return picked != null ? picked : findCustomer(query.getText());
     }
 
     private void returnBike() {
         String rid = JOptionPane.showInputDialog(this, "Enter Rental ID:");
-        Rental r = findRental(rid);
-        if (r == null || r.returned) { JOptionPane.showMessageDialog(this, "Invalid Rental."); return; }
+        Rental r = rid == null ? null : fleet.findRental(rid);
+        if (r == null) { JOptionPane.showMessageDialog(this, "Invalid Rental."); return; }
+        if (r.returned()) { JOptionPane.showMessageDialog(this, "Rental " + rid + " was already returned on " + r.returnDate() + "."); return; }
+        Branch at = fleet.branchOfRental(rid);
         String[] damageOptions = {"No Damage", "Minor Scratch", "Moderate Damage", "Heavy Damage"};
         String damage = (String) JOptionPane.showInputDialog(this, "Select Damage Level", "Return",
                 JOptionPane.PLAIN_MESSAGE, null, damageOptions, damageOptions[0]);
-        int extra = rentalPolicy.damageFee(damage);
-        r.damageFee = extra; r.total = r.baseRent + extra; r.returnDate = LocalDate.now().toString(); r.returned = true;
-        Bike b = findBike(r.bikeId); if (b != null) b.setAvailable(true);
-        saveBikes(); saveRentals();
-        JOptionPane.showMessageDialog(this, "Return Complete\nTotal Payable: ₹" + r.total);
+        try {
+            r = at.engine.returnBike(rid, damage);
+            int lateFee = r.total() - r.baseRent() - r.damageFee();
+            JOptionPane.showMessageDialog(this, "Return Complete\n" + (lateFee > 0 ? "Late fee: ₹" + lateFee + "\n" : "")
+                    + "Total Payable: ₹" + r.total());
+        } catch (RentalException ex) {
+            JOptionPane.showMessageDialog(this, ex.getMessage());
+        }
     }
 
     private void viewRecords() {
-        StringBuilder sb = new StringBuilder("Rental History:\n\n");
-        for (int i = 0; i < rentCount; i++) {
-            Rental r = rentals[i];
-            sb.append(r.rentalId).append(" | ").append(r.bikeId).append(" | ").append(r.customerId)
-              .append(" | Total: ₹").append(r.total).append(r.returned ? " (Returned)" : " (Ongoing)")
-              .append(" | Start: ").append(r.startDate).append(" | Return: ").append(r.returnDate).append("\n");
-        }
-        JTextArea area = new JTextArea(sb.toString(), 16, 50);
-        area.setEditable(false);
-        area.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
-        JScrollPane sp = new JScrollPane(area);
-        sp.setPreferredSize(new Dimension(640, 360));
-        JOptionPane.showMessageDialog(this, sp, "Records", JOptionPane.PLAIN_MESSAGE);
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Dashboard", dashboard());
+        JPanel rentals = new JPanel(new BorderLayout());
+        tabs.addTab("Rentals", rentals);
+        tabs.addChangeListener(e -> {
+            if (tabs.getSelectedComponent() == rentals && rentals.getComponentCount() == 0) {
+                rentals.add(rentalsView());
+                rentals.revalidate();
+            }
+        });
+        tabs.addTab("Import / Export", transferView());
+        JOptionPane.showMessageDialog(this, tabs, "Records", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    private JComponent transferView() {
+        JComboBox<BulkTransfer.Kind> kind = new JComboBox<>(BulkTransfer.Kind.values());
+        JButton importBtn = new JButton("Import…");
+        JButton exportBtn = new JButton("Export…");
+        JTextArea log = new JTextArea("Files use the same id|…|… layout as bikes.txt, customers.txt and rentals.txt.\n", 10, 60);
+        log.setEditable(false);
+        log.setLineWrap(true);
+        JPanel panel = new JPanel(new BorderLayout(0, 8));
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        controls.add(kind);
+        controls.add(importBtn);
+        controls.add(exportBtn);
+        panel.add(controls, BorderLayout.NORTH);
+        panel.add(new JScrollPane(log), BorderLayout.CENTER);
+        panel.setBorder(new EmptyBorder(8, 8, 8, 8));
+
+        java.util.function.BiConsumer<String, java.util.concurrent.Callable<String>> runInBackground = (start, job) -> {
+            importBtn.setEnabled(false);
+            exportBtn.setEnabled(false);
+            for (JButton b : dataButtons) b.setEnabled(false);
+            log.append(start + "\n");
+            Thread worker = new Thread(() -> {
+                String result;
+                try {
+                    result = job.call();
+                } catch (Exception ex) {
+                    result = "Failed: " + ex.getMessage();
+                }
+                String text = result;
+                SwingUtilities.invokeLater(() -> {
+                    log.append(text + "\n");
+                    importBtn.setEnabled(true);
+                    exportBtn.setEnabled(true);
+                    for (JButton b : dataButtons) b.setEnabled(true);
+                    updateFooter();
+                });
+            }, "bikerental-transfer");
+            worker.setDaemon(true);
+            worker.start();
+        };
+        importBtn.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            if (chooser.showOpenDialog(panel) != JFileChooser.APPROVE_OPTION) return;
+            BulkTransfer.Kind k = (BulkTransfer.Kind) kind.getSelectedItem();
+            Path in = chooser.getSelectedFile().toPath();
+            runInBackground.accept("Importing " + in + "…", () -> {
+                BulkTransfer.Report report = BulkTransfer.importFile(k, in, engine, writer, fleet);
+                // Rents and returns run on the EDT, so rebuilding there keeps any made during the import.
+                SwingUtilities.invokeAndWait(() -> {
+                    if (k == BulkTransfer.Kind.RENTALS) {
+                        analytics.rebuild(store.rentals(), archive);
+                        overdue.rebuild(store.rentals());
+                    }
+                    live.get(branch).reset(store, analytics);
+                });
+                return report.toString();
+            });
+        });
+        exportBtn.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            BulkTransfer.Kind k = (BulkTransfer.Kind) kind.getSelectedItem();
+            chooser.setSelectedFile(new File(k.name().toLowerCase(Locale.ROOT) + "-export.txt"));
+            if (chooser.showSaveDialog(panel) != JFileChooser.APPROVE_OPTION) return;
+            Path out = chooser.getSelectedFile().toPath();
+            runInBackground.accept("Exporting to " + out + "…", () -> String.format(Locale.ROOT, "Exported %,d %s to %s",
+                    BulkTransfer.export(k, out, store), k.name().toLowerCase(Locale.ROOT), out));
+        });
+        return panel;
     }
 
-    private Customer findCustomer(String license) {
-        if (license == null) return null;
-        license = license.trim().toLowerCase();
-        for (int i = 0; i < custCount; i++) {
-            if (customers[i].getLicense().trim().toLowerCase().equals(license)) return customers[i];
+    private JComponent dashboard() {
+        RentalAnalytics.Report report = analytics.report();
+        JPanel tiles = new JPanel(new GridLayout(1, fleet.branches.size() > 1 ? 5 : 4, 10, 0));
+        tiles.add(tile("Revenue", String.format(Locale.ROOT, "₹%,d", report.revenue),
+                String.format(Locale.ROOT, "%,d returns", report.returns)));
+        tiles.add(tile("Damage fees", String.format(Locale.ROOT, "₹%,d", report.damageFees),
+                String.format(Locale.ROOT, "%,d damaged returns", report.damagedReturns)));
+        tiles.add(tile("Ongoing", String.format(Locale.ROOT, "%,d", report.ongoing.size()),
+                String.format(Locale.ROOT, "out now, %,d overdue", overdue.overdueCount())));
+        tiles.add(tile("Utilization", String.format(Locale.ROOT, "%.1f%%", 100 * report.fleetUtilization(store.bikeCount())),
+                "since " + (report.since.isEmpty() ? "—" : report.since)));
+        if (fleet.branches.size() > 1) {
+            RentalAnalytics.Report all = fleet.report();
+            tiles.add(tile("All branches", String.format(Locale.ROOT, "₹%,d", all.revenue), String.format(Locale.ROOT,
+                    "%,d/%,d bikes free, %,d overdue", fleet.available(), fleet.bikeCount(), fleet.overdueCount())));
         }
-        return null;
+
+        ListTableModel<RentalAnalytics.BikeStats> bikes = new ListTableModel<RentalAnalytics.BikeStats>(
+                "Bike", "Rentals", "Days", "Revenue", "Utilization") {
+            @Override Object value(RentalAnalytics.BikeStats b, int column) {
+                switch (column) {
+                    case 0: return b.bikeId;
+                    case 1: return b.rentals;
+                    case 2: return b.days;
+                    case 3: return "₹" + b.revenue;
+                    default: return String.format(Locale.ROOT, "%.1f%%", 100 * report.utilization(b));
+                }
+            }
+            @Override Comparator<RentalAnalytics.BikeStats> comparator(int column) {
+                switch (column) {
+                    case 0: return Comparator.comparing((RentalAnalytics.BikeStats b) -> b.bikeId, ListTableModel::compareIds);
+                    case 1: return Comparator.comparingInt((RentalAnalytics.BikeStats b) -> b.rentals);
+                    case 2: case 4: return Comparator.comparingLong((RentalAnalytics.BikeStats b) -> b.days);
+                    default: return Comparator.comparingLong((RentalAnalytics.BikeStats b) -> b.revenue);
+                }
+            }
+        };
+        List<RentalAnalytics.BikeStats> fleet = new ArrayList<>();
+        for (Bike b : store.bikes()) fleet.add(report.bike(b.getBikeId()));
+        bikes.setRows(fleet);
+
+        ListTableModel<Map.Entry<Integer, Long>> days = new ListTableModel<Map.Entry<Integer, Long>>("Date", "Revenue") {
+            @Override Object value(Map.Entry<Integer, Long> d, int column) {
+                return column == 0 ? RentalColumns.dateString(d.getKey()) : "₹" + d.getValue();
+            }
+            @Override Comparator<Map.Entry<Integer, Long>> comparator(int column) {
+                return column == 0 ? Map.Entry.comparingByKey() : Map.Entry.comparingByValue();
+            }
+        };
+        days.setRows(new ArrayList<>(report.revenueByDay.descendingMap().entrySet()));
+
+        int today = today();
+        ListTableModel<Rental> ongoing = new ListTableModel<Rental>("Rental ID", "Bike", "Start", "Days", "Late") {
+            @Override Object value(Rental r, int column) {
+                switch (column) {
+                    case 0: return r.rentalId();
+                    case 1: return r.bikeId();
+                    case 2: return r.startDate();
+                    case 3: return r.days();
+                    default: return overdue.isOverdue(r.rentalId()) ? r.daysLate(today) + " d" : "";
+                }
+            }
+            @Override Comparator<Rental> comparator(int column) {
+                switch (column) {
+                    case 0: return Rental::compareIds;
+                    case 1: return Comparator.comparing(Rental::bikeId, ListTableModel::compareIds);
+                    case 2: return Comparator.comparingInt(Rental::startDay);
+                    case 3: return Comparator.comparingInt(Rental::days);
+                    default: return Comparator.comparingInt((Rental r) -> r.daysLate(today));
+                }
+            }
+        };
+        ongoing.setRows(report.ongoing);
+
+        JPanel tables = new JPanel(new GridLayout(1, 3, 10, 0));
+        tables.add(tableView(bikes, new JLabel("Per bike"), 300, 300));
+        tables.add(tableView(days, new JLabel("Revenue per day"), 200, 300));
+        tables.add(tableView(ongoing, new JLabel("Ongoing rentals"), 280, 300));
+        JPanel panel = new JPanel(new BorderLayout(0, 12));
+        panel.setBorder(new EmptyBorder(8, 8, 8, 8));
+        panel.add(tiles, BorderLayout.NORTH);
+        panel.add(tables, BorderLayout.CENTER);
+        return panel;
+    }
+
+    private static JComponent tile(String title, String value, String detail) {
+        return tile(title, new JLabel(value), new JLabel(detail));
+    }
+
+    private static JComponent tile(String title, JLabel big, JLabel small) {
+        JPanel tile = new JPanel(new GridLayout(3, 1));
+        tile.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createLineBorder(new Color(200, 210, 225)), new EmptyBorder(6, 10, 6, 10)));
+        big.setFont(big.getFont().deriveFont(Font.BOLD, 20f));
+        small.setForeground(Color.GRAY);
+        tile.add(new JLabel(title));
+        tile.add(big);
+        tile.add(small);
+        return tile;
+    }
+
+    private JComponent rentalsView() {
+        ListTableModel<Rental> model = new ListTableModel<Rental>(
+                "Rental ID", "Bike", "Customer", "Name", "Days", "Total", "Status", "Start", "Return") {
+            @Override Object value(Rental r, int column) {
+                switch (column) {
+                    case 0: return r.rentalId();
+                    case 1: return r.bikeId();
+                    case 2: return r.customerId();
+                    case 3: { Customer c = store.findCustomerById(r.customerId()); return c == null ? "" : c.getName(); }
+                    case 4: return r.days();
+                    case 5: return "₹" + r.total();
+                    case 6: return r.returned() ? "Returned" : "Ongoing";
+                    case 7: return r.startDate();
+                    default: return r.returnDate();
+                }
+            }
+            @Override Comparator<Rental> comparator(int column) {
+                switch (column) {
+                    case 0: return Rental::compareIds;
+                    case 1: return Comparator.comparing(Rental::bikeId, ListTableModel::compareIds);
+                    case 2: case 3: return Comparator.comparing(Rental::customerId, ListTableModel::compareIds);
+                    case 4: return Comparator.comparingInt(Rental::days);
+                    case 5: return Comparator.comparingInt(Rental::total);
+                    case 6: return Comparator.comparing(Rental::returned);
+                    case 7: return Comparator.comparingInt(Rental::startDay);
+                    default: return Comparator.comparingInt(Rental::returnDay);
+                }
+            }
+        };
+        model.setRows(store.rentals());
+        JTextField customer = new JTextField(10);
+        JTextField bike = new JTextField(6);
+        JComboBox<String> status = new JComboBox<>(new String[]{"All", "Ongoing", "Returned"});
+        JTextField from = new JTextField(8);
+        JTextField to = new JTextField(8);
+        from.setToolTipText("Start date from (yyyy-mm-dd)");
+        to.setToolTipText("Start date to (yyyy-mm-dd)");
+        JCheckBox archived = new JCheckBox("Archive");
+        archived.setToolTipText("Also show archived rentals that started between From and To");
+        JLabel count = new JLabel();
+        RentalFilter[] current = new RentalFilter[1];
+        String[] loadedRange = new String[1];
+        Runnable apply = () -> {
+            String start = dateField(from), end = dateField(to);
+            String range = archived.isSelected() ? start + ".." + end : null;
+            if (!Objects.equals(range, loadedRange[0])) {
+                loadedRange[0] = range;
+                model.setRows(range == null ? store.rentals() : concat(store.rentals(), archive.rentals(store,
+                        start.isEmpty() ? Integer.MIN_VALUE : RentalColumns.parseDay(start),
+                        end.isEmpty() ? Integer.MAX_VALUE : RentalColumns.parseDay(end))));
+                current[0] = null;
+            }
+            RentalFilter f = new RentalFilter(store, customer.getText(), bike.getText(), (String) status.getSelectedItem(), start, end);
+            model.setFilter(f, f.narrows(current[0]));
+            current[0] = f;
+            count.setText(String.format(Locale.ROOT, "%,d of %,d rentals", model.getRowCount(), model.totalRows()));
+        };
+        for (JTextField field : new JTextField[]{customer, bike, from, to}) onEdit(field, apply);
+        status.addActionListener(e -> apply.run());
+        archived.addActionListener(e -> apply.run());
+        apply.run();
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        filters.add(new JLabel("Customer:"));
+        filters.add(customer);
+        filters.add(new JLabel("Bike:"));
+        filters.add(bike);
+        filters.add(status);
+        filters.add(new JLabel("From:"));
+        filters.add(from);
+        filters.add(new JLabel("To:"));
+        filters.add(to);
+        filters.add(archived);
+        filters.add(count);
+        return tableView(model, filters, 820, 380);
+    }
+
+    private static <T> List<T> concat(List<T> a, List<T> b) {
+        return new AbstractList<T>() {
+            @Override public T get(int i) { return i < a.size() ? a.get(i) : b.get(i - a.size()); }
+            @Override public int size() { return a.size() + b.size(); }
+        };
+    }
+
+    private static JComponent tableView(ListTableModel<?> model, JComponent filters, int w, int h) {
+        return tableView(sortableTable(model), filters, w, h);
+    }
+
+    private static JTable sortableTable(ListTableModel<?> model) {
+        JTable table = new JTable(model);
+        table.setFillsViewportHeight(true);
+        table.getTableHeader().setReorderingAllowed(false);
+        table.getTableHeader().setToolTipText("Click a column to sort");
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override public void mouseClicked(MouseEvent e) {
+                int column = table.columnAtPoint(e.getPoint());
+                if (column >= 0) model.sortBy(table.convertColumnIndexToModel(column));
+            }
+        });
+        return table;
     }
 
-    private Bike findBike(String id) {
-        for (int i = 0; i < bikeCount; i++) if (bikes[i].getBikeId().equals(id)) return bikes[i];
-        return null;
+    private static JComponent tableView(JTable table, JComponent filters, int w, int h) {
+        JScrollPane sp = new JScrollPane(table);
+        sp.setPreferredSize(new Dimension(w, h));
+        JPanel panel = new JPanel(new BorderLayout(0, 8));
+        panel.add(filters, BorderLayout.NORTH);
+        panel.add(sp, BorderLayout.CENTER);
+        return panel;
     }
 
-    private Rental findRental(String rid) {
-        for (int i = 0; i < rentCount; i++) if (rentals[i].rentalId.equals(rid)) return rentals[i];
-        return null;
+    private static void onEdit(JTextField field, Runnable action) { onEdit(field, 150, action); }
+
+    private static void onEdit(JTextField field, int delayMillis, Runnable action) {
+        javax.swing.Timer debounce = new javax.swing.Timer(delayMillis, e -> action.run());
+        debounce.setRepeats(false);
+        field.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override public void insertUpdate(javax.swing.event.DocumentEvent e) { debounce.restart(); }
+            @Override public void removeUpdate(javax.swing.event.DocumentEvent e) { debounce.restart(); }
+            @Override public void changedUpdate(javax.swing.event.DocumentEvent e) { debounce.restart(); }
+        });
+    }
+
+    private static String dateField(JTextField field) {
+        String v = field.getText().trim();
+        if (v.isEmpty()) { field.setForeground(UIManager.getColor("TextField.foreground")); return ""; }
+        try {
+            LocalDate.parse(v);
+            field.setForeground(UIManager.getColor("TextField.foreground"));
+            return v;
+        } catch (java.time.format.DateTimeParseException e) {
+            field.setForeground(Color.RED);
+            return "";
+        }
+    }
+
+    static boolean containsIgnoreCase(String s, String q) {
+        int max = s.length() - q.length();
+        for (int i = 0; i <= max; i++) if (s.regionMatches(true, i, q, 0, q.length())) return true;
+        return false;
     }
 
+    private Customer findCustomer(String license) { return store.findCustomer(license); }
+
+    private Bike findBike(String id) { return store.findBike(id); }
+
     private static void installUIFont() {
         String[] prefs = {"Segoe UI", "Inter", "Roboto", "Helvetica Neue", "Noto Sans", "Arial"};
         Font base = UIManager.getFont("Label.font");
@@ -333,6 +1143,7 @@ public class BikeRentalSystem extends JFrame {
             Font test = new Font(p, Font.PLAIN, 13);
             if (test.getFamily().equals(p)) { f = test; break; }
         }
+        if (f == base) return;
         Enumeration<?> keys = UIManager.getDefaults().keys();
         while (keys.hasMoreElements()) {
             Object key = keys.nextElement();
@@ -353,30 +1164,77 @@ public class BikeRentalSystem extends JFrame {
         return img;
     }
 
+    static class RenderCache {
+        static boolean enabled = !Boolean.getBoolean("bikerental.noRenderCache");
+
+        private BufferedImage image;
+        private int width, height;
+        private double scale;
+
+        void draw(Graphics gg, int x, int y, int w, int h, java.util.function.Consumer<Graphics2D> painter) {
+            if (w <= 0 || h <= 0) return;
+            Graphics2D g = (Graphics2D) gg;
+            if (!enabled) {
+                Graphics2D direct = (Graphics2D) g.create();
+                direct.translate(x, y);
+                direct.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                painter.accept(direct);
+                direct.dispose();
+                return;
+            }
+            double s = g.getTransform().getScaleX();
+            if (image == null || width != w || height != h || scale != s) {
+                image = new BufferedImage((int) Math.ceil(w * s), (int) Math.ceil(h * s), BufferedImage.TYPE_INT_ARGB_PRE);
+                Graphics2D ig = image.createGraphics();
+                ig.scale(s, s);
+                ig.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                painter.accept(ig);
+                ig.dispose();
+                width = w;
+                height = h;
+                scale = s;
+            }
+            g.drawImage(image, x, y, w, h, null);
+        }
+    }
+
     static class ShawlWatermarkPanel extends JPanel {
+        private static final Shape PAISLEY = createPaisleyShape();
+        private static final Color BACKGROUND = new Color(250, 250, 248);
+        private static final Color FILL = new Color(200, 64, 64, 22);
+        private static final Color OUTLINE = new Color(150, 42, 42, 28);
+        private static final Stroke STROKE = new BasicStroke(1f);
+        private static final int STEP = 120;
+        private static final Shape[] TILES = {tile(15), tile(-12)};
+
+        private final RenderCache cache = new RenderCache();
+
         @Override protected void paintComponent(Graphics gg) {
             super.paintComponent(gg);
-            Graphics2D g = (Graphics2D) gg;
-            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g.setColor(new Color(250, 250, 248));
-            g.fillRect(0, 0, getWidth(), getHeight());
-            Shape paisley = createPaisleyShape();
-            int step = 120;
-            for (int y = 0; y < getHeight() + step; y += step) {
-                for (int x = 0; x < getWidth() + step; x += step) {
-                    AffineTransform at = new AffineTransform();
-                    at.translate(x + 20, y + 10);
-                    at.rotate(Math.toRadians((x/step + y/step) % 2 == 0 ? 15 : -12));
-                    at.scale(0.8, 0.8);
-                    Shape s = at.createTransformedShape(paisley);
-                    g.setColor(new Color(200, 64, 64, 22));
+            cache.draw(gg, 0, 0, getWidth(), getHeight(), g -> paintWatermark(g, getWidth(), getHeight()));
+        }
+        private static void paintWatermark(Graphics2D g, int w, int h) {
+            g.setColor(BACKGROUND);
+            g.fillRect(0, 0, w, h);
+            g.setStroke(STROKE);
+            for (int y = 0; y < h + STEP; y += STEP) {
+                for (int x = 0; x < w + STEP; x += STEP) {
+                    Shape s = TILES[(x/STEP + y/STEP) % 2 == 0 ? 0 : 1];
+                    g.translate(x + 20, y + 10);
+                    g.setColor(FILL);
                     g.fill(s);
-                    g.setStroke(new BasicStroke(1f));
-                    g.setColor(new Color(150, 42, 42, 28));
+                    g.setColor(OUTLINE);
                     g.draw(s);
+                    g.translate(-(x + 20), -(y + 10));
                 }
             }
         }
+        private static Shape tile(double degrees) {
+            AffineTransform at = new AffineTransform();
+            at.rotate(Math.toRadians(degrees));
+            at.scale(0.8, 0.8);
+            return new GeneralPath(at.createTransformedShape(PAISLEY));
+        }
         private static Shape createPaisleyShape() {
             GeneralPath p = new GeneralPath();
             p.moveTo(0, 0);
@@ -397,22 +1255,30 @@ public class BikeRentalSystem extends JFrame {
     }
 
     static class MountainsBannerPanel extends JPanel {
+        private static final Color SKY_TOP = new Color(44, 62, 80);
+        private static final Color SKY_BOTTOM = new Color(88, 130, 193);
+        private static final Color SUN = new Color(255, 255, 255, 60);
+        private static final Color[] RIDGES = {new Color(20, 30, 50, 170), new Color(30, 44, 70, 140), new Color(40, 60, 90, 120)};
+        private static final Color MIST = new Color(255, 255, 255, 90);
+        private static final Color MIST_END = new Color(255, 255, 255, 0);
+
+        private final RenderCache cache = new RenderCache();
+
         @Override protected void paintComponent(Graphics gg) {
             super.paintComponent(gg);
-            Graphics2D g = (Graphics2D) gg;
-            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            int w = getWidth(), h = getHeight();
-            GradientPaint sky = new GradientPaint(0, 0, new Color(44, 62, 80), 0, h, new Color(88, 130, 193));
-            g.setPaint(sky); g.fillRect(0, 0, w, h);
-            g.setColor(new Color(255, 255, 255, 60));
+            cache.draw(gg, 0, 0, getWidth(), getHeight(), g -> paintBanner(g, getWidth(), getHeight()));
+        }
+        private static void paintBanner(Graphics2D g, int w, int h) {
+            g.setPaint(new GradientPaint(0, 0, SKY_TOP, 0, h, SKY_BOTTOM)); g.fillRect(0, 0, w, h);
+            g.setColor(SUN);
             g.fillOval(w - 180, 20, 120, 120);
-            drawMountain(g, w, h, 0.65, new Color(20, 30, 50, 170));
-            drawMountain(g, w, h, 0.75, new Color(30, 44, 70, 140));
-            drawMountain(g, w, h, 0.85, new Color(40, 60, 90, 120));
-            g.setPaint(new GradientPaint(0, (int)(h*0.55), new Color(255,255,255,90), 0, h, new Color(255,255,255,0)));
+            drawMountain(g, w, h, 0.65, RIDGES[0]);
+            drawMountain(g, w, h, 0.75, RIDGES[1]);
+            drawMountain(g, w, h, 0.85, RIDGES[2]);
+            g.setPaint(new GradientPaint(0, (int)(h*0.55), MIST, 0, h, MIST_END));
             g.fillRect(0, (int)(h*0.45), w, (int)(h*0.55));
         }
-        private void drawMountain(Graphics2D g, int w, int h, double scaleY, Color c) {
+        private static void drawMountain(Graphics2D g, int w, int h, double scaleY, Color c) {
             int base = (int)(h * scaleY);
             Path2D p = new Path2D.Double();
             p.moveTo(0, base);
@@ -442,7 +1308,13 @@ public class BikeRentalSystem extends JFrame {
     }
 
     static class RoundedButton extends JButton {
-        private boolean hover = false;
+        private static final Color SHADOW = new Color(0, 0, 0, 35), SHADOW_HOVER = new Color(0, 0, 0, 50);
+        private static final Color TOP = new Color(52, 120, 220), TOP_HOVER = new Color(64, 145, 255);
+        private static final Color BOTTOM = new Color(40, 98, 190), BOTTOM_HOVER = new Color(44, 110, 230);
+        private static final Color FOCUS = new Color(255, 255, 255, 160);
+        private static final Stroke FOCUS_STROKE = new BasicStroke(2f);
+        private final RenderCache normal = new RenderCache(), hovered = new RenderCache();
+        boolean hover = false;
         public RoundedButton(String text, Icon icon) {
             super(text, icon);
             setFocusPainted(false);
@@ -459,18 +1331,15 @@ public class BikeRentalSystem extends JFrame {
             });
         }
         @Override protected void paintComponent(Graphics gg) {
+            int w = getWidth(), h = getHeight();
+            boolean hot = hover;
             Graphics2D g = (Graphics2D) gg;
+            if (!isEnabled()) g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f));
+            (hot ? hovered : normal).draw(g, 0, 0, w, h, bg -> paintBackground(bg, w, h, hot));
             g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            int w = getWidth(), h = getHeight();
-            g.setColor(new Color(0,0,0, hover ? 50 : 35));
-            g.fillRoundRect(4, 6, w-4-4, h-6-4, 18, 18);
-            GradientPaint gp = new GradientPaint(0, 0, hover ? new Color(64, 145, 255) : new Color(52, 120, 220),
-                                                 0, h, hover ? new Color(44, 110, 230) : new Color(40, 98, 190));
-            g.setPaint(gp);
-            g.fillRoundRect(0, 0, w-6, h-6, 18, 18);
             if (isFocusOwner()) {
-                g.setStroke(new BasicStroke(2f));
-                g.setColor(new Color(255, 255, 255, 160));
+                g.setStroke(FOCUS_STROKE);
+                g.setColor(FOCUS);
                 g.drawRoundRect(2, 2, w-10, h-10, 16, 16);
             }
             g.setColor(Color.WHITE);
@@ -480,17 +1349,25 @@ public class BikeRentalSystem extends JFrame {
             if (getIcon() != null) getIcon().paintIcon(this, g, 18, (h - getIcon().getIconHeight())/2 - 2);
             g.drawString(getText(), textX, textY);
         }
+        private static void paintBackground(Graphics2D g, int w, int h, boolean hover) {
+            g.setColor(hover ? SHADOW_HOVER : SHADOW);
+            g.fillRoundRect(4, 6, w-4-4, h-6-4, 18, 18);
+            g.setPaint(new GradientPaint(0, 0, hover ? TOP_HOVER : TOP, 0, h, hover ? BOTTOM_HOVER : BOTTOM));
+            g.fillRoundRect(0, 0, w-6, h-6, 18, 18);
+        }
     }
 
     static class BikeIcon implements Icon {
+        private static final Stroke STROKE = new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
         private final int w, h;
+        private final RenderCache cache = new RenderCache();
         public BikeIcon(int w, int h) { this.w = w; this.h = h; }
         @Override public void paintIcon(Component c, Graphics gg, int x, int y) {
-            Graphics2D g = (Graphics2D) gg.create();
-            g.translate(x, y);
-            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g.setStroke(new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            g.setColor(new Color(255,255,255));
+            cache.draw(gg, x - 2, y - 2, w + 4, h + 4, g -> { g.translate(2, 2); paintBike(g); });
+        }
+        private void paintBike(Graphics2D g) {
+            g.setStroke(STROKE);
+            g.setColor(Color.WHITE);
             g.drawOval(0, h-12, 12, 12);
             g.drawOval(w-14, h-12, 12, 12);
             g.drawLine(6, h-6, w/2-2, h-16);
@@ -498,7 +1375,6 @@ public class BikeRentalSystem extends JFrame {
             g.drawLine(w/2-2, h-16, w/2-6, h-6);
             g.drawLine(w-10, h-16, w-4, h-18);
             g.drawLine(w/2-6, h-16, w/2-10, h-18);
-            g.dispose();
         }
         @Override public int getIconWidth() { return w; }
         @Override public int getIconHeight() { return h; }
@@ -526,44 +1402,2964 @@ public class BikeRentalSystem extends JFrame {
         private final String bikeId;
         private final String model;
         private final int rate;
-        private boolean available = true;
+        private final java.util.concurrent.atomic.AtomicBoolean available = new java.util.concurrent.atomic.AtomicBoolean(true);
         public Bike(String id, String m, int r) { bikeId = id; model = m; rate = r; }
         public String getBikeId() { return bikeId; }
         public String getModel() { return model; }
         public int getRate() { return rate; }
-        public boolean isAvailable() { return available; }
-        public void setAvailable(boolean a) { available = a; }
-        public String toString() { return bikeId + " | " + model + " | ₹" + rate + "/day | " + (available ? "Available" : "Rented"); }
+        public boolean isAvailable() { return available.get(); }
+        public void setAvailable(boolean a) { available.set(a); }
+        public boolean tryClaim() { return available.compareAndSet(true, false); }
+        public String toString() { return bikeId + " | " + model + " | ₹" + rate + "/day | " + (isAvailable() ? "Available" : "Rented"); }
     }
 
     static class Rental {
-        String rentalId, bikeId, customerId;
-        int days, baseRent, damageFee, total;
-        boolean returned = false;
-        String startDate = LocalDate.now().toString();
-        String returnDate = "";
-        public Rental(String rid, String bid, String cid, int d, int cost) {
-            rentalId = rid; bikeId = bid; customerId = cid; days = d; baseRent = cost; total = cost;
+        private final RentalColumns columns;
+        private final int row;
+        Rental(RentalColumns columns, int row) { this.columns = columns; this.row = row; }
+        String rentalId() { return columns.rentalId(row); }
+        String bikeId() { return columns.bikeId(row); }
+        String customerId() { return columns.customerId(row); }
+        int days() { return columns.block.days[row]; }
+        int baseRent() { return columns.block.baseRent[row]; }
+        int damageFee() { return columns.block.damageFee[row]; }
+        int total() { return columns.block.total[row]; }
+        boolean returned() { return columns.block.returned.get(row); }
+        int number() { return columns.block.number[row]; }
+        int startDay() { return columns.block.startDay[row]; }
+        int returnDay() { return columns.block.returnDay[row]; }
+        String startDate() { return columns.date(row, RentalColumns.START); }
+        String returnDate() { return columns.date(row, RentalColumns.RETURN); }
+        // Due back on startDay + days; rentals without a readable start date are never late.
+        int dueDay() { int s = startDay(); return s <= RentalColumns.NO_DATE ? Integer.MAX_VALUE : s + days(); }
+        int daysLate(int today) { return Math.max(0, today - dueDay()); }
+
+        static int compareIds(Rental a, Rental b) {
+            int x = a.columns.block.number[a.row], y = b.columns.block.number[b.row];
+            if (x >= 0 && y >= 0) return Integer.compare(x, y);
+            return ListTableModel.compareIds(a.rentalId(), b.rentalId());
         }
     }
 
-    static class InvalidLicenseException extends Exception { public InvalidLicenseException(String msg) { super(msg); } }
+    // An advance booking of a bike for days [startDay, startDay + days).
+    static class Reservation {
+        private final String reservationId;
+        private final String bikeId;
+        private final String customerId;
+        private final int startDay;
+        private final int days;
+        Reservation(String reservationId, String bikeId, String customerId, int startDay, int days) {
+            this.reservationId = reservationId;
+            this.bikeId = bikeId;
+            this.customerId = customerId;
+            this.startDay = startDay;
+            this.days = days;
+        }
+        String reservationId() { return reservationId; }
+        String bikeId() { return bikeId; }
+        String customerId() { return customerId; }
+        int startDay() { return startDay; }
+        int days() { return days; }
+        int endDay() { return startDay + days; }
+        String startDate() { return RentalColumns.dateString(startDay); }
+        String lastDate() { return RentalColumns.dateString(startDay + days - 1); }
+    }
 
-    interface RentalPolicy { boolean eligible(Customer c); int damageFee(String level); }
+    static class RentalColumns {
+        static final int NO_DATE = Integer.MIN_VALUE + 1, IRREGULAR = Integer.MIN_VALUE;
+        static final int ID = 0, START = 1, RETURN = 2;
 
-    static class SimplePolicy implements RentalPolicy {
-        public boolean eligible(Customer c) { return c.getAge() >= 18 && c.getLicense().trim().length() >= 8; }
-        public int damageFee(String level) {
-            switch (String.valueOf(level)) {
-                case "Minor Scratch": return 200;
-                case "Moderate Damage": return 500;
-                case "Heavy Damage": return 1000;
-                default: return 0;
+        static final class Block {
+            final int[] number, bike, customer, days, baseRent, damageFee, total, startDay, returnDay;
+            final BitSet returned;
+            Block(int capacity, Block from, int size) {
+                number = grow(from == null ? null : from.number, capacity, size);
+                bike = grow(from == null ? null : from.bike, capacity, size);
+                customer = grow(from == null ? null : from.customer, capacity, size);
+                days = grow(from == null ? null : from.days, capacity, size);
+                baseRent = grow(from == null ? null : from.baseRent, capacity, size);
+                damageFee = grow(from == null ? null : from.damageFee, capacity, size);
+                total = grow(from == null ? null : from.total, capacity, size);
+                startDay = grow(from == null ? null : from.startDay, capacity, size);
+                returnDay = grow(from == null ? null : from.returnDay, capacity, size);
+                returned = new BitSet(capacity);
+                if (from != null) returned.or(from.returned);
+            }
+            private static int[] grow(int[] a, int capacity, int size) {
+                int[] b = new int[capacity];
+                if (a != null) System.arraycopy(a, 0, b, 0, size);
+                return b;
+            }
+        }
+
+        // Writers hold the DataStore lock; readers go through this volatile field, which is rewritten after every change.
+        volatile Block block = new Block(16, null, 0);
+        private int size;
+        private final List<String> bikeIds = new ArrayList<>(), customerIds = new ArrayList<>();
+        private final Map<String, Integer> bikeIndex = new HashMap<>(), customerIndex = new HashMap<>();
+        private final Map<Long, String> irregular = new java.util.concurrent.ConcurrentHashMap<>();
+        private final Map<String, Integer> irregularIds = new HashMap<>();
+        private int[] slots = new int[32];
+
+        int size() { return size; }
+
+        int add(String rentalId, String bikeId, String customerId, int days, int baseRent, int damageFee, int total,
+                boolean returned, String startDate, String returnDate) {
+            int start = parseDay(startDate), end = parseDay(returnDate);
+            int row = add(rentalId, bikeId, customerId, days, baseRent, damageFee, total, returned, start, end);
+            if (start == IRREGULAR) irregular.put(key(row, START), startDate);
+            if (end == IRREGULAR) irregular.put(key(row, RETURN), returnDate);
+            return row;
+        }
+
+        int add(String rentalId, String bikeId, String customerId, int days, int baseRent, int damageFee, int total,
+                boolean returned, int startDay, int returnDay) {
+            Block b = block;
+            if (size == b.number.length) b = new Block(size + (size >> 1), b, size);
+            int row = size, number = parseNumber(rentalId);
+            b.number[row] = number;
+            b.bike[row] = intern(bikeId, bikeIds, bikeIndex);
+            b.customer[row] = intern(customerId, customerIds, customerIndex);
+            b.days[row] = days;
+            b.baseRent[row] = baseRent;
+            b.damageFee[row] = damageFee;
+            b.total[row] = total;
+            b.startDay[row] = startDay;
+            b.returnDay[row] = returnDay;
+            if (returned) b.returned.set(row);
+            if (number < 0) {
+                irregular.put(key(row, ID), rentalId);
+                irregularIds.putIfAbsent(rentalId, row);
+            }
+            size++;
+            block = b;
+            if (number >= 0 && find(number) < 0) index(number, row);
+            return row;
+        }
+
+        RentalColumns without(BitSet removed) {
+            RentalColumns out = new RentalColumns();
+            Block b = block;
+            for (int row = 0; row < size; row++) {
+                if (removed.get(row)) continue;
+                int start = b.startDay[row], end = b.returnDay[row];
+                int copy = out.add(rentalId(row), bikeId(row), customerId(row), b.days[row], b.baseRent[row], b.damageFee[row],
+                        b.total[row], b.returned.get(row), start, end);
+                if (start == IRREGULAR) out.irregular.put(key(copy, START), irregular.get(key(row, START)));
+                if (end == IRREGULAR) out.irregular.put(key(copy, RETURN), irregular.get(key(row, RETURN)));
+            }
+            return out;
+        }
+
+        boolean markReturned(int row, int damageFee, int total, int returnDay) {
+            Block b = block;
+            if (b.returned.get(row)) return false;
+            b.damageFee[row] = damageFee;
+            b.total[row] = total;
+            b.returnDay[row] = returnDay;
+            b.returned.set(row);
+            block = b;
+            return true;
+        }
+
+        int find(String rentalId) {
+            int number = parseNumber(rentalId);
+            if (number >= 0) return find(number);
+            Integer row = irregularIds.get(rentalId);
+            return row == null ? -1 : row;
+        }
+
+        String rentalId(int row) {
+            int number = block.number[row];
+            return number >= 0 ? "R" + number : irregular.get(key(row, ID));
+        }
+
+        String bikeId(int row) { return bikeIds.get(block.bike[row]); }
+        String customerId(int row) { return customerIds.get(block.customer[row]); }
+
+        String date(int row, int field) {
+            int day = field == START ? block.startDay[row] : block.returnDay[row];
+            return day == IRREGULAR ? irregular.get(key(row, field)) : dateString(day);
+        }
+
+        static String dateString(int day) { return day == NO_DATE ? "" : day == IRREGULAR ? "?" : LocalDate.ofEpochDay(day).toString(); }
+
+        // Only dates that print back exactly the same (yyyy-mm-dd) are stored as days; anything else is kept verbatim.
+        static int parseDay(String date) {
+            if (date == null || date.isEmpty()) return NO_DATE;
+            if (date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') return IRREGULAR;
+            int y = digits(date, 0, 4), m = digits(date, 5, 7), d = digits(date, 8, 10);
+            if (y < 0 || m < 0 || d < 0) return IRREGULAR;
+            try {
+                return (int) LocalDate.of(y, m, d).toEpochDay();
+            } catch (java.time.DateTimeException e) {
+                return IRREGULAR;
+            }
+        }
+
+        // "R" followed by up to nine digits without a leading zero; other IDs are kept verbatim.
+        static int parseNumber(String rentalId) {
+            int n = rentalId == null ? 0 : rentalId.length();
+            if (n < 2 || n > 10 || rentalId.charAt(0) != 'R' || (n > 2 && rentalId.charAt(1) == '0')) return -1;
+            return digits(rentalId, 1, n);
+        }
+
+        private static int digits(String s, int from, int to) {
+            int v = 0;
+            for (int i = from; i < to; i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') return -1;
+                v = v * 10 + (c - '0');
+            }
+            return v;
+        }
+
+        private static long key(int row, int field) { return (long) row << 2 | field; }
+
+        private static int intern(String id, List<String> ids, Map<String, Integer> index) {
+            Integer i = index.get(id);
+            if (i == null) {
+                i = ids.size();
+                ids.add(id);
+                index.put(id, i);
+            }
+            return i;
+        }
+
+        // Open-addressing map from rental number to row; a slot holds row + 1, or 0 when empty.
+        private int find(int number) {
+            int mask = slots.length - 1;
+            for (int i = mix(number) & mask; slots[i] != 0; i = (i + 1) & mask) {
+                if (block.number[slots[i] - 1] == number) return slots[i] - 1;
+            }
+            return -1;
+        }
+
+        private void index(int number, int row) {
+            if (2 * (size + 1) > slots.length) {
+                int[] old = slots;
+                slots = new int[old.length * 2];
+                for (int s : old) if (s != 0) place(block.number[s - 1], s);
             }
+            place(number, row + 1);
         }
+
+        private void place(int number, int slot) {
+            int mask = slots.length - 1, i = mix(number) & mask;
+            while (slots[i] != 0) i = (i + 1) & mask;
+            slots[i] = slot;
+        }
+
+        private static int mix(int x) { return (x * 0x9E3779B9) ^ (x >>> 16); }
     }
 
-    public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> new BikeRentalSystem().setVisible(true));
+    static abstract class ListTableModel<T> extends javax.swing.table.AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        private final String[] columns;
+        private List<T> rows = Collections.emptyList();
+        private int[] view = new int[0];
+        private int size;
+        private java.util.function.Predicate<? super T> filter = r -> true;
+        private int sortColumn = -1;
+        private boolean ascending = true;
+
+        ListTableModel(String... columns) { this.columns = columns; }
+
+        abstract Object value(T row, int column);
+        abstract Comparator<T> comparator(int column);
+
+        static int compareIds(String a, String b) {
+            return a.length() != b.length() ? Integer.compare(a.length(), b.length()) : a.compareTo(b);
+        }
+
+        void setRows(List<T> rows) {
+            this.rows = rows;
+            refresh(false);
+        }
+
+        void setFilter(java.util.function.Predicate<? super T> filter, boolean narrowing) {
+            this.filter = filter;
+            refresh(narrowing);
+        }
+
+        void sortBy(int column) {
+            if (column == sortColumn) ascending = !ascending;
+            else { sortColumn = column; ascending = true; }
+            sort();
+            fireTableDataChanged();
+        }
+
+        int totalRows() { return rows.size(); }
+        T rowAt(int viewRow) { return rows.get(view[viewRow]); }
+
+        @Override public int getRowCount() { return size; }
+        @Override public int getColumnCount() { return columns.length; }
+        @Override public String getColumnName(int column) { return columns[column]; }
+        @Override public Object getValueAt(int row, int column) { return value(rowAt(row), column); }
+
+        private void refresh(boolean narrowing) {
+            int n = narrowing ? size : rows.size();
+            int[] next = narrowing ? view : new int[n];
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                int idx = narrowing ? view[i] : i;
+                if (filter.test(rows.get(idx))) next[count++] = idx;
+            }
+            view = next;
+            size = count;
+            if (!narrowing) sort();
+            fireTableDataChanged();
+        }
+
+        private void sort() {
+            if (sortColumn < 0 || size < 2) return;
+            Comparator<T> cmp = ascending ? comparator(sortColumn) : comparator(sortColumn).reversed();
+            int[] src = view, dst = new int[view.length];
+            for (int width = 1; width < size; width <<= 1) {
+                for (int lo = 0; lo < size; lo += width << 1) {
+                    int mid = Math.min(lo + width, size), hi = Math.min(lo + (width << 1), size);
+                    int i = lo, j = mid, k = lo;
+                    while (i < mid && j < hi) dst[k++] = cmp.compare(rows.get(src[j]), rows.get(src[i])) < 0 ? src[j++] : src[i++];
+                    while (i < mid) dst[k++] = src[i++];
+                    while (j < hi) dst[k++] = src[j++];
+                }
+                int[] t = src; src = dst; dst = t;
+            }
+            view = src;
+        }
+    }
+
+    static class RentalFilter implements java.util.function.Predicate<Rental> {
+        private final String customer, bike, status, from, to;
+        private final int fromDay, toDay;
+        private final Set<String> customerIds;
+
+        RentalFilter(DataStore store, String customer, String bike, String status, String from, String to) {
+            this.customer = customer.trim();
+            this.bike = bike.trim();
+            this.status = status;
+            this.from = from;
+            this.to = to;
+            fromDay = from.isEmpty() ? Integer.MIN_VALUE : RentalColumns.parseDay(from);
+            toDay = to.isEmpty() ? Integer.MAX_VALUE : RentalColumns.parseDay(to);
+            if (this.customer.isEmpty()) {
+                customerIds = null;
+            } else {
+                customerIds = new HashSet<>();
+                for (Customer c : store.customers()) {
+                    if (containsIgnoreCase(c.getId(), this.customer) || containsIgnoreCase(c.getName(), this.customer)
+                            || containsIgnoreCase(c.getLicense(), this.customer)) customerIds.add(c.getId());
+                }
+            }
+        }
+
+        boolean narrows(RentalFilter previous) {
+            return previous != null
+                    && containsIgnoreCase(customer, previous.customer) && containsIgnoreCase(bike, previous.bike)
+                    && ("All".equals(previous.status) || previous.status.equals(status))
+                    && from.compareTo(previous.from) >= 0
+                    && (previous.to.isEmpty() || (!to.isEmpty() && to.compareTo(previous.to) <= 0));
+        }
+
+        @Override public boolean test(Rental r) {
+            if (!"All".equals(status) && r.returned() != "Returned".equals(status)) return false;
+            int start = r.startDay();
+            if (start < fromDay || start > toDay) return false;
+            if (!bike.isEmpty() && !containsIgnoreCase(r.bikeId(), bike)) return false;
+            return customerIds == null || customerIds.contains(r.customerId());
+        }
+    }
+
+    // Customers with their license, ID and prefix indexes. Branch stores share one directory, so it has its own lock.
+    static class CustomerDirectory {
+        private List<Customer> customers = new ArrayList<>();
+        private Map<String, Customer> byLicense = new HashMap<>();
+        private Map<String, Customer> byId = new HashMap<>();
+        // Normalized license, full name and later name words -> customers; built by index() on the loader thread.
+        private TreeMap<String, List<Customer>> prefixes;
+
+        static String licenseKey(String license) { return license.trim().toLowerCase(); }
+
+        // Lowercase letters and digits only, so "JK-01 1234" and "jk011234" search alike.
+        static String searchKey(String s) {
+            StringBuilder sb = new StringBuilder(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                char ch = s.charAt(i);
+                if (Character.isLetterOrDigit(ch)) sb.append(Character.toLowerCase(ch));
+            }
+            return sb.toString();
+        }
+
+        synchronized void add(Customer c) {
+            customers.add(c);
+            byLicense.putIfAbsent(licenseKey(c.getLicense()), c);
+            byId.putIfAbsent(c.getId(), c);
+            if (prefixes != null) indexPrefixes(prefixes, c);
+        }
+
+        private static void indexPrefixes(TreeMap<String, List<Customer>> index, Customer c) {
+            indexPrefix(index, searchKey(c.getLicense()), c);
+            String name = c.getName().trim();
+            indexPrefix(index, searchKey(name), c);
+            for (int i = name.indexOf(' '); i >= 0; i = name.indexOf(' ', i + 1)) {
+                int end = name.indexOf(' ', i + 1);
+                indexPrefix(index, searchKey(name.substring(i + 1, end < 0 ? name.length() : end)), c);
+            }
+        }
+
+        private static void indexPrefix(TreeMap<String, List<Customer>> index, String key, Customer c) {
+            if (key.isEmpty()) return;
+            List<Customer> list = index.computeIfAbsent(key, k -> new ArrayList<>(1));
+            if (list.isEmpty() || list.get(list.size() - 1) != c) list.add(c);
+        }
+
+        // Builds the search index outside the lock, then catches up with customers registered meanwhile.
+        void index() {
+            List<Customer> source, snapshot;
+            synchronized (this) {
+                if (prefixes != null) return;
+                source = customers;
+                snapshot = new ArrayList<>(customers);
+            }
+            TreeMap<String, List<Customer>> index = new TreeMap<>();
+            for (Customer c : snapshot) indexPrefixes(index, c);
+            synchronized (this) {
+                if (prefixes != null || customers != source || customers.size() < snapshot.size()) return;
+                for (int i = snapshot.size(); i < customers.size(); i++) indexPrefixes(index, customers.get(i));
+                prefixes = index;
+            }
+        }
+
+        // Customers whose license, name or any later word of the name starts with the query, in key order.
+        // Finds nothing until index() has run, so a search typed on the EDT never builds the index itself.
+        List<Customer> search(String query, int limit) {
+            String key = query == null ? "" : searchKey(query);
+            Set<Customer> found = new LinkedHashSet<>();
+            if (key.isEmpty()) return new ArrayList<>(found);
+            synchronized (this) {
+                if (prefixes == null) return new ArrayList<>(found);
+                for (List<Customer> list : prefixes.subMap(key, key + Character.MAX_VALUE).values()) {
+                    for (Customer c : list) if (found.size() < limit) found.add(c);
+                    if (found.size() >= limit) break;
+                }
+            }
+            return new ArrayList<>(found);
+        }
+
+        synchronized Customer findById(String id) { return id == null ? null : byId.get(id); }
+        synchronized Customer find(String license) { return license == null ? null : byLicense.get(licenseKey(license)); }
+        synchronized List<Customer> list() { return Collections.unmodifiableList(new ArrayList<>(customers)); }
+        synchronized int count() { return customers.size(); }
+        synchronized void clear() { customers.clear(); byLicense.clear(); byId.clear(); prefixes = null; }
+
+        // Takes over the other directory's contents; this object stays the one the branches share.
+        synchronized void adopt(CustomerDirectory from) {
+            synchronized (from) {
+                customers = from.customers;
+                byLicense = from.byLicense;
+                byId = from.byId;
+                prefixes = from.prefixes;
+            }
+        }
+    }
+
+    static class DataStore {
+        private List<Bike> bikes = new ArrayList<>();
+        private final CustomerDirectory customers;
+        private RentalColumns rentals = new RentalColumns();
+        private Map<String, Bike> bikesById = new HashMap<>();
+        // Per bike, non-overlapping reservations keyed by start day.
+        private final Map<String, TreeMap<Integer, Reservation>> reservationsByBike = new HashMap<>();
+        private final Map<String, Reservation> reservationsById = new HashMap<>();
+        // Bike id -> day its ongoing rental is due back.
+        private Map<String, Integer> dueByBike = new HashMap<>();
+
+        DataStore() { this(new CustomerDirectory()); }
+        DataStore(CustomerDirectory customers) { this.customers = customers; }
+
+        CustomerDirectory customerDirectory() { return customers; }
+
+        synchronized void addBike(Bike b) { bikes.add(b); bikesById.putIfAbsent(b.getBikeId(), b); }
+        void addCustomer(Customer c) { customers.add(c); }
+        void indexCustomers() { customers.index(); }
+
+        List<Customer> searchCustomers(String query, int limit) {
+            long t0 = Metrics.sampleStart();
+            List<Customer> found = customers.search(query, limit);
+            Metrics.sampleEnd(t0);
+            return found;
+        }
+
+        synchronized Rental addRental(String rentalId, String bikeId, String customerId, int days, int baseRent, int damageFee,
+                                      int total, boolean returned, String startDate, String returnDate) {
+            Rental r = new Rental(rentals, rentals.add(rentalId, bikeId, customerId, days, baseRent, damageFee, total, returned, startDate, returnDate));
+            if (!returned) dueByBike.put(bikeId, r.startDay() + days);
+            return r;
+        }
+
+        synchronized Rental addRental(String rentalId, String bikeId, String customerId, int days, int baseRent, int damageFee,
+                                      int total, boolean returned, int startDay, int returnDay) {
+            Rental r = new Rental(rentals, rentals.add(rentalId, bikeId, customerId, days, baseRent, damageFee, total, returned, startDay, returnDay));
+            if (!returned) dueByBike.put(bikeId, r.startDay() + days);
+            return r;
+        }
+
+        // Returns the updated rental, or null if it was already returned or is not in this store.
+        synchronized Rental completeReturn(Rental r, int damageFee, int total, int returnDay) {
+            int row = r.columns == rentals ? r.row : rentals.find(r.rentalId());
+            if (row < 0 || !rentals.markReturned(row, damageFee, total, returnDay)) return null;
+            Rental done = new Rental(rentals, row);
+            dueByBike.remove(done.bikeId());
+            return done;
+        }
+
+        // Adds the reservation unless it overlaps another one for the bike or, with checkRentals, the bike's ongoing rental.
+        synchronized boolean addReservation(Reservation v, boolean checkRentals) {
+            Bike b = bikesById.get(v.bikeId());
+            if (b == null || reservationsById.containsKey(v.reservationId())) return false;
+            if (checkRentals && rentedDuring(b, v.startDay(), today())) return false;
+            if (overlapping(v.bikeId(), v.startDay(), v.endDay()) != null) return false;
+            reservationsByBike.computeIfAbsent(v.bikeId(), k -> new TreeMap<>()).put(v.startDay(), v);
+            reservationsById.put(v.reservationId(), v);
+            return true;
+        }
+
+        synchronized Reservation removeReservation(String id) {
+            Reservation v = id == null ? null : reservationsById.remove(id);
+            if (v == null) return null;
+            TreeMap<Integer, Reservation> booked = reservationsByBike.get(v.bikeId());
+            booked.remove(v.startDay());
+            if (booked.isEmpty()) reservationsByBike.remove(v.bikeId());
+            return v;
+        }
+
+        // Null if the bike can be rented by the customer over [from, to); otherwise the reservation in the way.
+        // The customer's own reservations starting by then are picked up: removed and added to pickedUp.
+        synchronized Reservation holdForRental(String bikeId, String customerId, int from, int to, List<Reservation> pickedUp) {
+            TreeMap<Integer, Reservation> booked = reservationsByBike.get(bikeId);
+            if (booked != null) {
+                List<Reservation> hits = new ArrayList<>(booked.subMap(from, true, to, false).values());
+                Map.Entry<Integer, Reservation> before = booked.lowerEntry(from);
+                if (before != null && before.getValue().endDay() > from) hits.add(0, before.getValue());
+                for (Reservation v : hits) if (!v.customerId().equals(customerId) || v.startDay() > from) return v;
+                for (Reservation v : hits) removeReservation(v.reservationId());
+                pickedUp.addAll(hits);
+            }
+            dueByBike.put(bikeId, to);
+            return null;
+        }
+
+        // Bikes with no reservation in [from, to) that are not out on a rental by then: O(log k) per bike.
+        synchronized List<Bike> freeBikes(int from, int to) {
+            int today = today();
+            List<Bike> free = new ArrayList<>();
+            for (Bike b : bikes) if (!rentedDuring(b, from, today) && overlapping(b.getBikeId(), from, to) == null) free.add(b);
+            return free;
+        }
+
+        // Reservations on one bike never overlap, so only the last one starting before `to` can reach past `from`.
+        private Reservation overlapping(String bikeId, int from, int to) {
+            TreeMap<Integer, Reservation> booked = reservationsByBike.get(bikeId);
+            Map.Entry<Integer, Reservation> e = booked == null ? null : booked.lowerEntry(to);
+            return e != null && e.getValue().endDay() > from ? e.getValue() : null;
+        }
+
+        // A rented bike is busy until its due day, and at least until tomorrow while it is overdue.
+        private boolean rentedDuring(Bike b, int from, int today) {
+            if (b.isAvailable()) return false;
+            Integer due = dueByBike.get(b.getBikeId());
+            return from < Math.max(due == null ? 0 : due, today + 1);
+        }
+
+        synchronized RentalColumns rentalColumns() { return rentals; }
+
+        // A bike is rented exactly when an unreturned rental holds it. Saves write bikes.txt and rentals.txt one after
+        // the other while rentals go on, so after a compaction the bike flags can lag the rentals; these win.
+        synchronized void syncAvailability() {
+            Set<String> out = new HashSet<>();
+            for (int row = 0; row < rentals.size(); row++) {
+                Rental r = new Rental(rentals, row);
+                if (!r.returned()) out.add(r.bikeId());
+            }
+            for (Bike b : bikes) b.setAvailable(!out.contains(b.getBikeId()));
+        }
+
+        synchronized boolean removeRentals(RentalColumns expected, BitSet rows) {
+            if (rentals != expected) return false;
+            rentals = rentals.without(rows);
+            return true;
+        }
+
+        Bike findBike(String id) {
+            long t0 = Metrics.sampleStart();
+            Bike b;
+            synchronized (this) { b = id == null ? null : bikesById.get(id); }
+            Metrics.sampleEnd(t0);
+            return b;
+        }
+        Customer findCustomerById(String id) { return customers.findById(id); }
+        Customer findCustomer(String license) {
+            long t0 = Metrics.sampleStart();
+            Customer c = customers.find(license);
+            Metrics.sampleEnd(t0);
+            return c;
+        }
+
+        Rental findRental(String rid) {
+            long t0 = Metrics.sampleStart();
+            Rental r;
+            synchronized (this) {
+                int row = rid == null ? -1 : rentals.find(rid);
+                r = row < 0 ? null : new Rental(rentals, row);
+            }
+            Metrics.sampleEnd(t0);
+            return r;
+        }
+
+        synchronized List<Bike> bikes() { return Collections.unmodifiableList(new ArrayList<>(bikes)); }
+        List<Customer> customers() { return customers.list(); }
+        synchronized List<Rental> rentals() { return new RentalRows(rentals, rentals.size()); }
+        synchronized List<Reservation> reservations() {
+            List<Reservation> list = new ArrayList<>(reservationsById.values());
+            list.sort(Comparator.comparingInt(Reservation::startDay).thenComparing(Reservation::bikeId));
+            return list;
+        }
+
+        synchronized int bikeCount() { return bikes.size(); }
+        int customerCount() { return customers.count(); }
+        synchronized int rentalCount() { return rentals.size(); }
+        synchronized int reservationCount() { return reservationsById.size(); }
+
+        synchronized void clearBikes() { bikes.clear(); bikesById.clear(); }
+        void clearCustomers() { customers.clear(); }
+        synchronized void clearRentals() { rentals = new RentalColumns(); dueByBike = new HashMap<>(); }
+        synchronized void clearReservations() { reservationsByBike.clear(); reservationsById.clear(); }
+
+        synchronized void adopt(DataStore bikesFrom, DataStore customersFrom, DataStore rentalsFrom) {
+            synchronized (bikesFrom) { bikes = bikesFrom.bikes; bikesById = bikesFrom.bikesById; }
+            if (customersFrom != null) customers.adopt(customersFrom.customers);
+            synchronized (rentalsFrom) { rentals = rentalsFrom.rentals; dueByBike = rentalsFrom.dueByBike; }
+        }
+
+        // A fixed-length view of the first rows; the Rental objects are created on access.
+        private static class RentalRows extends AbstractList<Rental> implements RandomAccess {
+            private final RentalColumns columns;
+            private final int size;
+            RentalRows(RentalColumns columns, int size) { this.columns = columns; this.size = size; }
+            @Override public Rental get(int i) {
+                if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+                return new Rental(columns, i);
+            }
+            @Override public int size() { return size; }
+        }
+    }
+
+    static class RentalJournal {
+        private final Path path;
+        private java.nio.channels.FileChannel channel;
+        private int size;
+
+        RentalJournal(Path path) { this.path = path; }
+
+        int size() { return size; }
+
+        static String customerRecord(Customer c) {
+            return "C|" + c.getId() + "|" + escape(c.getName()) + "|" + c.getAge() + "|" + escape(c.getLicense());
+        }
+
+        static String rentRecord(Rental r) {
+            return "R|" + r.rentalId() + "|" + r.bikeId() + "|" + r.customerId() + "|" + r.days() + "|" + r.baseRent() + "|" + r.startDate();
+        }
+
+        static String returnRecord(Rental r) {
+            return "T|" + r.rentalId() + "|" + r.damageFee() + "|" + r.total() + "|" + r.returnDate();
+        }
+
+        static String reserveRecord(Reservation v) {
+            return "V|" + v.reservationId() + "|" + v.bikeId() + "|" + v.customerId() + "|" + v.startDate() + "|" + v.days();
+        }
+
+        static String cancelRecord(Reservation v) { return "X|" + v.reservationId(); }
+
+        void append(List<String> entries) throws IOException {
+            long t0 = System.nanoTime();
+            StringBuilder sb = new StringBuilder();
+            for (String e : entries) sb.append(e).append(System.lineSeparator());
+            if (channel == null) {
+                channel = java.nio.channels.FileChannel.open(path, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(sb.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) channel.write(buf);
+            size += entries.size();
+            Metrics.timer("save.journal").recordSince(t0);
+            Metrics.count("bytes.written", buf.limit());
+        }
+
+        void sync() throws IOException {
+            if (channel != null) channel.force(false);
+        }
+
+        void truncate() throws IOException {
+            close();
+            Files.deleteIfExists(path);
+            size = 0;
+        }
+
+        void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+
+        void replay(DataStore store) {
+            size = 0;
+            if (!Files.exists(path)) return;
+            long t0 = System.nanoTime();
+            try (BufferedReader br = Files.newBufferedReader(path)) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.trim().isEmpty()) continue;
+                    size++;
+                    try {
+                        apply(line.split("\\|", -1), store);
+                    } catch (RuntimeException e) {
+                        Metrics.count("load.failures", 1);
+                    }
+                }
+            } catch (IOException e) {
+                Metrics.count("load.failures", 1);
+            }
+            Metrics.loaded("load.journal", t0, size);
+        }
+
+        private static void apply(String[] parts, DataStore store) {
+            switch (parts[0]) {
+                case "C":
+                    if (parts.length >= 5 && store.findCustomerById(parts[1]) == null) {
+                        store.addCustomer(new Customer(parts[1], parts[2], Integer.parseInt(parts[3]), parts[4]));
+                    }
+                    break;
+                case "R":
+                    if (parts.length >= 7 && store.findRental(parts[1]) == null) {
+                        int base = Integer.parseInt(parts[5]);
+                        store.addRental(parts[1], parts[2], parts[3], Integer.parseInt(parts[4]), base, 0, base, false, parts[6], "");
+                        Bike b = store.findBike(parts[2]);
+                        if (b != null) b.setAvailable(false);
+                    }
+                    break;
+                case "T":
+                    Rental r = parts.length >= 5 ? store.findRental(parts[1]) : null;
+                    if (r != null && store.completeReturn(r, Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), RentalColumns.parseDay(parts[4])) != null) {
+                        Bike b = store.findBike(r.bikeId());
+                        if (b != null) b.setAvailable(true);
+                    }
+                    break;
+                case "V":
+                    int start = parts.length >= 6 ? RentalColumns.parseDay(parts[4]) : RentalColumns.NO_DATE;
+                    if (start > RentalColumns.NO_DATE) {
+                        store.addReservation(new Reservation(parts[1], parts[2], parts[3], start, Integer.parseInt(parts[5])), false);
+                    }
+                    break;
+                case "X":
+                    if (parts.length >= 2) store.removeReservation(parts[1]);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    // Where a branch's bikes, rentals and reservations (and, for the home branch, the customers) are kept between runs.
+    // Only the loader and then the branch's writer thread call it.
+    interface Storage {
+        // Replaces what the store holds; stageDone runs once each for bikes, customers and rentals.
+        void load(DataStore store, Runnable stageDone) throws IOException;
+        // Writes one part in full.
+        void save(PersistenceWriter.Dirty part, DataStore store) throws IOException;
+        // Makes everything saved so far durable.
+        void sync() throws IOException;
+        // True when apply writes journal records straight to storage; otherwise they go to the journal.
+        default boolean takesRecords() { return false; }
+        // Writes what the journal records changed. Without row-level writes, the parts they touch are saved in full.
+        default void apply(List<String> records, DataStore store) throws IOException {
+            EnumSet<PersistenceWriter.Dirty> parts = EnumSet.noneOf(PersistenceWriter.Dirty.class);
+            for (String record : records) {
+                switch (record.isEmpty() ? ' ' : record.charAt(0)) {
+                    case 'C': parts.add(PersistenceWriter.Dirty.CUSTOMERS); break;
+                    case 'R': case 'T': parts.add(PersistenceWriter.Dirty.BIKES); parts.add(PersistenceWriter.Dirty.RENTALS); break;
+                    case 'V': case 'X': parts.add(PersistenceWriter.Dirty.RESERVATIONS); break;
+                    default: break;
+                }
+            }
+            for (PersistenceWriter.Dirty part : parts) save(part, store);
+        }
+        // True when close should save everything because a faster copy is out of date.
+        default boolean stale() { return false; }
+        // Runs after a full save.
+        default void checkpoint(DataStore store) throws IOException {}
+        default void close() {}
+    }
+
+    // The text files in dir, read back through snapshot.bin when it is current. Rents and returns in between
+    // go to the journal and are folded in by the writer's compaction.
+    static class FlatFileStorage implements Storage {
+        private final Path dir;
+        private final boolean withCustomers;
+        private boolean unsynced;
+
+        FlatFileStorage(Path dir, boolean withCustomers) {
+            this.dir = dir;
+            this.withCustomers = withCustomers;
+        }
+
+        @Override public void load(DataStore store, Runnable stageDone) throws IOException {
+            Files.createDirectories(dir.toAbsolutePath());
+            Path snapshot = dir.resolve(SNAPSHOT_FILE);
+            boolean loaded = false;
+            if (SnapshotFile.isFresh(snapshot, sourceFiles(dir, withCustomers))) {
+                try {
+                    SnapshotFile.read(snapshot, store, withCustomers);
+                    for (int i = 0; i < 3; i++) stageDone.run();
+                    loaded = true;
+                } catch (IOException ignored) {}
+            }
+            if (!loaded) loadText(dir, withCustomers, store, stageDone);
+            loadReservations(dir.resolve(RESERVATIONS_FILE), store);
+        }
+
+        @Override public void save(PersistenceWriter.Dirty part, DataStore store) throws IOException {
+            switch (part) {
+                case BIKES: writeBikes(dir.resolve(BIKES_FILE), store); break;
+                case CUSTOMERS: writeCustomers(dir.resolve(CUSTOMERS_FILE), store); break;
+                case RENTALS: writeRentals(dir.resolve(RENTALS_FILE), store); break;
+                default: writeReservations(dir.resolve(RESERVATIONS_FILE), store); break;
+            }
+            unsynced = true;
+        }
+
+        // Each file was forced before its rename; this makes the renames themselves durable before the journal
+        // that covers them is truncated. Platforms that can't open a directory rely on the rename alone.
+        @Override public void sync() throws IOException {
+            if (!unsynced) return;
+            try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(dir.toAbsolutePath(), StandardOpenOption.READ)) {
+                ch.force(true);
+            } catch (AccessDeniedException | UnsupportedOperationException ignored) {}
+            unsynced = false;
+        }
+
+        @Override public boolean stale() { return !SnapshotFile.isFresh(dir.resolve(SNAPSHOT_FILE), sourceFiles(dir, withCustomers)); }
+
+        @Override public void checkpoint(DataStore store) throws IOException {
+            try {
+                SnapshotFile.write(dir.resolve(SNAPSHOT_FILE), store, withCustomers);
+            } catch (IOException e) {
+                Metrics.count("save.failures", 1);
+                Files.deleteIfExists(dir.resolve(SNAPSHOT_FILE));
+            }
+        }
+
+        @Override public String toString() { return "flat files in " + dir.toAbsolutePath(); }
+    }
+
+    // An embedded SQL database (H2 or SQLite in file mode) opened through DriverManager, e.g.
+    // -Dbikerental.jdbcUrl=jdbc:h2:./bikerental with the driver jar on the classpath. All branches share the
+    // database, keyed by branch name. Each batch of rents, returns, registrations and bookings becomes one
+    // transaction of batched inserts and updates for just the rows they touch.
+    static class JdbcStorage implements Storage {
+        private static final int BATCH = 1000;
+        private static final String[] SCHEMA = {
+                "CREATE TABLE IF NOT EXISTS bikes (branch VARCHAR(64) NOT NULL, id VARCHAR(64) NOT NULL, model VARCHAR(255),"
+                        + " rate INTEGER, available BOOLEAN, PRIMARY KEY (branch, id))",
+                "CREATE TABLE IF NOT EXISTS customers (id VARCHAR(64) PRIMARY KEY, name VARCHAR(255), age INTEGER, license VARCHAR(64))",
+                "CREATE TABLE IF NOT EXISTS rentals (branch VARCHAR(64) NOT NULL, id VARCHAR(64) NOT NULL, bike_id VARCHAR(64),"
+                        + " customer_id VARCHAR(64), days INTEGER, base_rent INTEGER, damage_fee INTEGER, total INTEGER,"
+                        + " returned BOOLEAN, start_day INTEGER, return_day INTEGER, PRIMARY KEY (branch, id))",
+                "CREATE TABLE IF NOT EXISTS reservations (branch VARCHAR(64) NOT NULL, id VARCHAR(64) NOT NULL, bike_id VARCHAR(64),"
+                        + " customer_id VARCHAR(64), start_day INTEGER, days INTEGER, PRIMARY KEY (branch, id))",
+                "CREATE INDEX IF NOT EXISTS customers_license ON customers (license)",
+                "CREATE INDEX IF NOT EXISTS rentals_bike ON rentals (branch, bike_id)",
+                "CREATE INDEX IF NOT EXISTS rentals_status ON rentals (branch, returned)",
+                "CREATE INDEX IF NOT EXISTS reservations_bike ON reservations (branch, bike_id)"};
+        private static final String INSERT_BIKE = "INSERT INTO bikes (branch, id, model, rate, available) VALUES (?, ?, ?, ?, ?)";
+        private static final String INSERT_CUSTOMER = "INSERT INTO customers (id, name, age, license) VALUES (?, ?, ?, ?)";
+        private static final String INSERT_RENTAL = "INSERT INTO rentals (branch, id, bike_id, customer_id, days, base_rent,"
+                + " damage_fee, total, returned, start_day, return_day) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        private static final String INSERT_RESERVATION = "INSERT INTO reservations (branch, id, bike_id, customer_id, start_day, days)"
+                + " VALUES (?, ?, ?, ?, ?, ?)";
+
+        private interface Binder<T> { void bind(java.sql.PreparedStatement ps, T row) throws java.sql.SQLException; }
+
+        private final String url;
+        private final String branch;
+        private final boolean withCustomers;
+        private java.sql.Connection connection;
+
+        JdbcStorage(String url, String branch, boolean withCustomers) {
+            this.url = url;
+            this.branch = branch;
+            this.withCustomers = withCustomers;
+        }
+
+        @Override public boolean takesRecords() { return true; }
+
+        @Override public synchronized void load(DataStore store, Runnable stageDone) throws IOException {
+            long t0 = System.nanoTime();
+            DataStore bikes = new DataStore(), customers = new DataStore(), rentals = new DataStore();
+            List<Reservation> reservations = new ArrayList<>();
+            try {
+                try (java.sql.ResultSet rs = select("SELECT id, model, rate, available FROM bikes WHERE branch = ?")) {
+                    while (rs.next()) {
+                        Bike b = new Bike(rs.getString(1), rs.getString(2), rs.getInt(3));
+                        b.setAvailable(rs.getBoolean(4));
+                        bikes.addBike(b);
+                    }
+                }
+                stageDone.run();
+                if (withCustomers) {
+                    try (java.sql.Statement st = connection().createStatement();
+                         java.sql.ResultSet rs = st.executeQuery("SELECT id, name, age, license FROM customers")) {
+                        while (rs.next()) customers.addCustomer(new Customer(rs.getString(1), rs.getString(2), rs.getInt(3), rs.getString(4)));
+                    }
+                }
+                stageDone.run();
+                try (java.sql.ResultSet rs = select("SELECT id, bike_id, customer_id, days, base_rent, damage_fee, total,"
+                        + " returned, start_day, return_day FROM rentals WHERE branch = ?")) {
+                    while (rs.next()) {
+                        rentals.addRental(rs.getString(1), rs.getString(2), rs.getString(3), rs.getInt(4), rs.getInt(5), rs.getInt(6),
+                                rs.getInt(7), rs.getBoolean(8), day(rs, 9), day(rs, 10));
+                    }
+                }
+                stageDone.run();
+                try (java.sql.ResultSet rs = select("SELECT id, bike_id, customer_id, start_day, days FROM reservations WHERE branch = ?")) {
+                    while (rs.next()) reservations.add(new Reservation(rs.getString(1), rs.getString(2), rs.getString(3), rs.getInt(4), rs.getInt(5)));
+                }
+                connection.commit();
+            } catch (java.sql.SQLException e) {
+                throw rollback("load from", e);
+            }
+            store.adopt(bikes, withCustomers ? customers : null, rentals);
+            store.clearReservations();
+            for (Reservation v : reservations) store.addReservation(v, false);
+            Metrics.loaded("load.jdbc", t0, store.rentalCount());
+        }
+
+        @Override public synchronized void save(PersistenceWriter.Dirty part, DataStore store) throws IOException {
+            long t0 = System.nanoTime();
+            try {
+                switch (part) {
+                    case BIKES:
+                        replace("bikes", INSERT_BIKE, store.bikes(), (ps, b) -> {
+                            ps.setString(1, branch); ps.setString(2, b.getBikeId()); ps.setString(3, b.getModel());
+                            ps.setInt(4, b.getRate()); ps.setBoolean(5, b.isAvailable());
+                        });
+                        break;
+                    case CUSTOMERS:
+                        if (withCustomers) replace("customers", INSERT_CUSTOMER, store.customers(), JdbcStorage::bindCustomer);
+                        break;
+                    case RENTALS:
+                        replace("rentals", INSERT_RENTAL, store.rentals(), this::bindRental);
+                        break;
+                    default:
+                        replace("reservations", INSERT_RESERVATION, store.reservations(), this::bindReservation);
+                        break;
+                }
+                connection.commit();
+            } catch (java.sql.SQLException e) {
+                throw rollback("save " + part.name().toLowerCase(Locale.ROOT) + " to", e);
+            }
+            Metrics.timer("save.jdbc").recordSince(t0);
+        }
+
+        // Turns journal records into row inserts and updates. The rows are taken from the store, so a record
+        // applied late still writes the current state. Inserts delete the row first, as a full save may already
+        // have written it.
+        @Override public synchronized void apply(List<String> records, DataStore store) throws IOException {
+            long t0 = System.nanoTime();
+            Set<String> bikes = new LinkedHashSet<>();
+            java.sql.Connection c;
+            try {
+                c = connection();
+            } catch (java.sql.SQLException e) {
+                throw failure("connect to", e);
+            }
+            try (java.sql.PreparedStatement dropCustomers = c.prepareStatement("DELETE FROM customers WHERE id = ?");
+                 java.sql.PreparedStatement customers = c.prepareStatement(INSERT_CUSTOMER);
+                 java.sql.PreparedStatement dropRentals = c.prepareStatement("DELETE FROM rentals WHERE branch = ? AND id = ?");
+                 java.sql.PreparedStatement rented = c.prepareStatement(INSERT_RENTAL);
+                 java.sql.PreparedStatement returned = c.prepareStatement("UPDATE rentals SET damage_fee = ?, total = ?, returned = ?,"
+                         + " return_day = ? WHERE branch = ? AND id = ?");
+                 java.sql.PreparedStatement dropReservations = c.prepareStatement("DELETE FROM reservations WHERE branch = ? AND id = ?");
+                 java.sql.PreparedStatement reserved = c.prepareStatement(INSERT_RESERVATION);
+                 java.sql.PreparedStatement cancelled = c.prepareStatement("DELETE FROM reservations WHERE branch = ? AND id = ?");
+                 java.sql.PreparedStatement status = c.prepareStatement("UPDATE bikes SET available = ? WHERE branch = ? AND id = ?")) {
+                for (String record : records) {
+                    String[] parts = record.split("\\|", -1);
+                    switch (parts[0]) {
+                        case "C": {
+                            Customer cu = store.findCustomerById(parts[1]);
+                            if (cu == null) break;
+                            dropCustomers.setString(1, cu.getId());
+                            dropCustomers.addBatch();
+                            bindCustomer(customers, cu);
+                            customers.addBatch();
+                            break;
+                        }
+                        case "R": {
+                            Rental r = store.findRental(parts[1]);
+                            if (r == null) break;
+                            dropRentals.setString(1, branch); dropRentals.setString(2, r.rentalId());
+                            dropRentals.addBatch();
+                            bindRental(rented, r);
+                            rented.addBatch();
+                            bikes.add(r.bikeId());
+                            break;
+                        }
+                        case "T": {
+                            Rental r = store.findRental(parts[1]);
+                            if (r == null) break;
+                            returned.setInt(1, r.damageFee()); returned.setInt(2, r.total()); returned.setBoolean(3, r.returned());
+                            setDay(returned, 4, r.returnDay()); returned.setString(5, branch); returned.setString(6, r.rentalId());
+                            returned.addBatch();
+                            bikes.add(r.bikeId());
+                            break;
+                        }
+                        case "V": {
+                            int start = RentalColumns.parseDay(parts[4]);
+                            dropReservations.setString(1, branch); dropReservations.setString(2, parts[1]);
+                            dropReservations.addBatch();
+                            bindReservation(reserved, new Reservation(parts[1], parts[2], parts[3], start, Integer.parseInt(parts[5])));
+                            reserved.addBatch();
+                            break;
+                        }
+                        case "X":
+                            cancelled.setString(1, branch); cancelled.setString(2, parts[1]);
+                            cancelled.addBatch();
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                for (String id : bikes) {
+                    Bike b = store.findBike(id);
+                    if (b == null) continue;
+                    status.setBoolean(1, b.isAvailable()); status.setString(2, branch); status.setString(3, id);
+                    status.addBatch();
+                }
+                for (java.sql.PreparedStatement ps : Arrays.asList(dropCustomers, customers, dropRentals, rented, returned,
+                        dropReservations, reserved, cancelled, status)) ps.executeBatch();
+                c.commit();
+            } catch (java.sql.SQLException | RuntimeException e) {
+                throw rollback("write to", e);
+            }
+            Metrics.timer("save.jdbc").recordSince(t0);
+        }
+
+        // Commits are already durable in the database.
+        @Override public void sync() {}
+
+        @Override public synchronized void close() {
+            if (connection == null) return;
+            try {
+                connection.close();
+            } catch (java.sql.SQLException ignored) {
+            }
+            connection = null;
+        }
+
+        @Override public String toString() { return url + " (" + branch + ")"; }
+
+        private java.sql.Connection connection() throws java.sql.SQLException {
+            if (connection != null) return connection;
+            java.sql.Connection c = java.sql.DriverManager.getConnection(url);
+            // Branches load in parallel, and concurrent CREATE ... IF NOT EXISTS can still collide.
+            synchronized (JdbcStorage.class) {
+                try (java.sql.Statement st = c.createStatement()) {
+                    for (String ddl : SCHEMA) st.execute(ddl);
+                    c.setAutoCommit(false);
+                } catch (java.sql.SQLException e) {
+                    c.close();
+                    throw e;
+                }
+            }
+            return connection = c;
+        }
+
+        private <T> void replace(String table, String insert, List<T> rows, Binder<T> binder) throws java.sql.SQLException {
+            java.sql.Connection c = connection();
+            if (table.equals("customers")) {
+                try (java.sql.Statement st = c.createStatement()) { st.executeUpdate("DELETE FROM customers"); }
+            } else {
+                try (java.sql.PreparedStatement st = c.prepareStatement("DELETE FROM " + table + " WHERE branch = ?")) {
+                    st.setString(1, branch);
+                    st.executeUpdate();
+                }
+            }
+            try (java.sql.PreparedStatement ps = c.prepareStatement(insert)) {
+                int n = 0;
+                for (T row : rows) {
+                    binder.bind(ps, row);
+                    ps.addBatch();
+                    if (++n % BATCH == 0) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+
+        private static void bindCustomer(java.sql.PreparedStatement ps, Customer c) throws java.sql.SQLException {
+            ps.setString(1, c.getId()); ps.setString(2, c.getName()); ps.setInt(3, c.getAge()); ps.setString(4, c.getLicense());
+        }
+
+        private void bindRental(java.sql.PreparedStatement ps, Rental r) throws java.sql.SQLException {
+            ps.setString(1, branch); ps.setString(2, r.rentalId()); ps.setString(3, r.bikeId()); ps.setString(4, r.customerId());
+            ps.setInt(5, r.days()); ps.setInt(6, r.baseRent()); ps.setInt(7, r.damageFee()); ps.setInt(8, r.total());
+            ps.setBoolean(9, r.returned()); setDay(ps, 10, r.startDay()); setDay(ps, 11, r.returnDay());
+        }
+
+        private void bindReservation(java.sql.PreparedStatement ps, Reservation v) throws java.sql.SQLException {
+            ps.setString(1, branch); ps.setString(2, v.reservationId()); ps.setString(3, v.bikeId()); ps.setString(4, v.customerId());
+            ps.setInt(5, v.startDay()); ps.setInt(6, v.days());
+        }
+
+        // Dates are epoch days, NULL when missing.
+        private static void setDay(java.sql.PreparedStatement ps, int index, int day) throws java.sql.SQLException {
+            if (day == RentalColumns.NO_DATE) ps.setNull(index, java.sql.Types.INTEGER);
+            else ps.setInt(index, day);
+        }
+
+        private static int day(java.sql.ResultSet rs, int index) throws java.sql.SQLException {
+            int day = rs.getInt(index);
+            return rs.wasNull() ? RentalColumns.NO_DATE : day;
+        }
+
+        // The statement is closed along with the result set.
+        private java.sql.ResultSet select(String sql) throws java.sql.SQLException {
+            java.sql.PreparedStatement ps = connection().prepareStatement(sql);
+            ps.setString(1, branch);
+            ps.closeOnCompletion();
+            return ps.executeQuery();
+        }
+
+        private IOException rollback(String action, Exception e) {
+            try {
+                if (connection != null) connection.rollback();
+            } catch (java.sql.SQLException ignored) {
+            }
+            return failure(action, e);
+        }
+
+        private IOException failure(String action, Exception e) {
+            return new IOException("Could not " + action + " " + url + ": " + e.getMessage(), e);
+        }
+    }
+
+    static class PersistenceWriter implements RentalEngine.Listener {
+        enum Dirty { BIKES, CUSTOMERS, RENTALS, RESERVATIONS }
+
+        private static final Object STOP = new Object();
+
+        private final DataStore store;
+        private final Storage storage;
+        private final RentalJournal journal;
+        private final RentalArchive archive;
+        private final PersistenceWriter customerWriter;
+        private final int compactEvery;
+        private final long syncMillis;
+        private final Runnable listener;
+        private final java.util.concurrent.BlockingQueue<Object> queue = new java.util.concurrent.LinkedBlockingQueue<>();
+        private final java.util.concurrent.atomic.AtomicInteger pending = new java.util.concurrent.atomic.AtomicInteger();
+        private final Thread thread = new Thread(this::run, "bikerental-writer");
+        private volatile long lastCommit;
+        private volatile IOException lastFailure, loadFailure;
+
+        private final List<String> entries = new ArrayList<>();
+        private final EnumSet<Dirty> dirty = EnumSet.noneOf(Dirty.class);
+        private final boolean records;
+        private boolean journalUnsynced, storageUnsynced;
+
+        PersistenceWriter(DataStore store, Storage storage, RentalJournal journal, RentalArchive archive, PersistenceWriter customerWriter,
+                          int compactEvery, long syncMillis, Runnable listener) {
+            this.store = store;
+            this.storage = storage;
+            this.records = journal != null || storage.takesRecords();
+            this.journal = journal;
+            this.archive = archive;
+            this.customerWriter = customerWriter;
+            this.compactEvery = compactEvery;
+            this.syncMillis = syncMillis;
+            this.listener = listener;
+            thread.setDaemon(true);
+        }
+
+        void start() { thread.start(); }
+
+        // Customers belong to the home branch, so another branch's writer passes them on.
+        void markDirty(Dirty... files) {
+            for (Dirty d : files) {
+                if (d == Dirty.CUSTOMERS && customerWriter != null) customerWriter.markDirty(d);
+                else submit(d);
+            }
+        }
+        void append(String entry) { submit(entry); }
+
+        @Override public void registered(Customer c) {
+            if (customerWriter != null) customerWriter.registered(c);
+            else if (!records) markDirty(Dirty.CUSTOMERS);
+            else append(RentalJournal.customerRecord(c));
+        }
+
+        @Override public void rented(Rental r) {
+            if (!records) markDirty(Dirty.BIKES, Dirty.RENTALS);
+            else append(RentalJournal.rentRecord(r));
+        }
+
+        @Override public void returned(Rental r) {
+            if (!records) markDirty(Dirty.BIKES, Dirty.RENTALS);
+            else append(RentalJournal.returnRecord(r));
+        }
+
+        @Override public void reserved(Reservation v) {
+            if (!records) markDirty(Dirty.RESERVATIONS);
+            else append(RentalJournal.reserveRecord(v));
+        }
+
+        @Override public void cancelled(Reservation v) {
+            if (!records) markDirty(Dirty.RESERVATIONS);
+            else append(RentalJournal.cancelRecord(v));
+        }
+
+        int pending() { return pending.get(); }
+        long lastCommit() { return lastCommit; }
+        IOException lastFailure() { return lastFailure; }
+        IOException loadFailure() { return loadFailure; }
+
+        // The store holds only part of what storage has, so nothing is saved over it from now on.
+        void loadFailed(IOException e) {
+            loadFailure = e;
+            lastFailure = e;
+        }
+
+        void close(long timeoutMillis) {
+            submit(STOP);
+            try {
+                thread.join(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void submit(Object item) {
+            pending.incrementAndGet();
+            queue.add(item);
+        }
+
+        private void run() {
+            List<Object> batch = new ArrayList<>();
+            int taken = 0;
+            boolean stop = false;
+            long lastSync = System.currentTimeMillis(), retryAt = 0;
+            while (true) {
+                try {
+                    boolean work = !entries.isEmpty() || !dirty.isEmpty() || storageUnsynced || journalUnsynced;
+                    long wait = Math.max(lastSync + syncMillis, retryAt) - System.currentTimeMillis();
+                    Object first = stop ? queue.poll() : !work ? queue.take()
+                            : queue.poll(Math.max(0, wait), java.util.concurrent.TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        queue.drainTo(batch);
+                    }
+                } catch (InterruptedException e) {
+                    stop = true;
+                }
+                for (Object item : batch) {
+                    if (item == STOP) stop = true;
+                    else if (item instanceof Dirty) dirty.add((Dirty) item);
+                    else entries.add((String) item);
+                }
+                taken += batch.size();
+                batch.clear();
+                if (!stop && System.currentTimeMillis() < retryAt) continue;
+                try {
+                    commit(stop);
+                    if (stop || System.currentTimeMillis() - lastSync >= syncMillis) {
+                        sync();
+                        lastSync = System.currentTimeMillis();
+                    }
+                    if (taken > 0) {
+                        pending.addAndGet(-taken);
+                        taken = 0;
+                        lastCommit = System.currentTimeMillis();
+                        lastFailure = loadFailure;
+                        listener.run();
+                    }
+                    retryAt = 0;
+                } catch (IOException e) {
+                    Metrics.count("save.failures", 1);
+                    lastFailure = e;
+                    retryAt = System.currentTimeMillis() + Math.max(syncMillis, 500);
+                    listener.run();
+                }
+                if (stop) {
+                    try { if (journal != null) journal.close(); } catch (IOException ignored) {}
+                    storage.close();
+                    return;
+                }
+            }
+        }
+
+        private void commit(boolean closing) throws IOException {
+            if (loadFailure != null) {
+                // Files are neither rewritten nor compacted. New records still go to the journal, which is replayed
+                // on top of the files once they load again.
+                dirty.clear();
+                if (journal != null && !entries.isEmpty()) {
+                    journal.append(entries);
+                    journalUnsynced = true;
+                }
+                entries.clear();
+                return;
+            }
+            if (storage.takesRecords() && !entries.isEmpty()) {
+                storage.apply(entries, store);
+                entries.clear();
+            }
+            boolean compact = false;
+            if (journal != null && !entries.isEmpty()) {
+                try {
+                    journal.append(entries);
+                    entries.clear();
+                    journalUnsynced = true;
+                } catch (IOException e) {
+                    Metrics.count("save.failures", 1);
+                    compact = true;
+                }
+            }
+            if (journal != null && (journal.size() >= compactEvery || (closing && journal.size() > 0))) compact = true;
+            if (closing && storage.stale()) compact = true;
+            if (compact) {
+                if (archive != null) {
+                    try {
+                        archive.archive(store);
+                    } catch (IOException e) {
+                        Metrics.count("save.failures", 1);
+                    }
+                }
+                dirty.addAll(EnumSet.allOf(Dirty.class));
+                if (customerWriter != null) dirty.remove(Dirty.CUSTOMERS);
+            }
+            for (Iterator<Dirty> it = dirty.iterator(); it.hasNext(); ) {
+                storage.save(it.next(), store);
+                storageUnsynced = true;
+                it.remove();
+            }
+            if (!compact) return;
+            storage.sync();
+            storageUnsynced = false;
+            if (journal != null) journal.truncate();
+            entries.clear();
+            journalUnsynced = false;
+            storage.checkpoint(store);
+        }
+
+        private void sync() throws IOException {
+            if (journalUnsynced) {
+                journal.sync();
+                journalUnsynced = false;
+            }
+            if (storageUnsynced) {
+                storage.sync();
+                storageUnsynced = false;
+            }
+        }
+
+        static void force(Path p) throws IOException {
+            try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(p, StandardOpenOption.WRITE)) {
+                ch.force(true);
+            }
+        }
+    }
+
+    static class SnapshotFile {
+        private static final int MAGIC = 0x4B425253;
+        private static final int VERSION = 1;
+        private static final int NO_DATE = -1;
+
+        static boolean isFresh(Path snapshot, Path... sources) {
+            try {
+                if (!Files.exists(snapshot)) return false;
+                long stamp = Files.getLastModifiedTime(snapshot).toMillis();
+                for (Path src : sources) {
+                    if (Files.exists(src) && Files.getLastModifiedTime(src).toMillis() > stamp) return false;
+                }
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        // Branch snapshots leave the shared customers out (withCustomers false) and keep an empty customer section.
+        static void write(Path p, DataStore store, boolean withCustomers) throws IOException {
+            long t0 = System.nanoTime();
+            // One copy of each list for both passes, so rentals made while this runs can't miss the dictionary.
+            List<Customer> customers = withCustomers ? store.customers() : Collections.emptyList();
+            List<Bike> bikes = store.bikes();
+            List<Rental> rentals = store.rentals();
+            Map<String, Integer> dict = new LinkedHashMap<>();
+            for (Bike b : bikes) { intern(dict, b.getBikeId()); intern(dict, b.getModel()); }
+            for (Customer c : customers) { intern(dict, c.getId()); intern(dict, c.getName()); intern(dict, c.getLicense()); }
+            for (Rental r : rentals) { intern(dict, r.rentalId()); intern(dict, r.bikeId()); intern(dict, r.customerId()); }
+
+            Path tmp = p.resolveSibling(p.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeVarInt(out, dict.size());
+                for (String v : dict.keySet()) {
+                    byte[] bytes = v.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+                    writeVarInt(out, bytes.length);
+                    out.write(bytes);
+                }
+                writeVarInt(out, bikes.size());
+                for (Bike b : bikes) {
+                    writeVarInt(out, dict.get(b.getBikeId()));
+                    writeVarInt(out, dict.get(b.getModel()));
+                    writeVarInt(out, b.getRate());
+                    out.writeByte(b.isAvailable() ? 1 : 0);
+                }
+                writeVarInt(out, customers.size());
+                for (Customer c : customers) {
+                    writeVarInt(out, dict.get(c.getId()));
+                    writeVarInt(out, dict.get(c.getName()));
+                    writeVarInt(out, c.getAge());
+                    writeVarInt(out, dict.get(c.getLicense()));
+                }
+                writeVarInt(out, rentals.size());
+                for (Rental r : rentals) {
+                    writeVarInt(out, dict.get(r.rentalId()));
+                    writeVarInt(out, dict.get(r.bikeId()));
+                    writeVarInt(out, dict.get(r.customerId()));
+                    writeVarInt(out, r.days());
+                    writeVarInt(out, r.baseRent());
+                    writeVarInt(out, r.damageFee());
+                    writeVarInt(out, r.total());
+                    out.writeByte(r.returned() ? 1 : 0);
+                    writeVarInt(out, toSnapshotDay(r.startDay(), r.startDate()) + 1);
+                    writeVarInt(out, toSnapshotDay(r.returnDay(), r.returnDate()) + 1);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING);
+            Metrics.saved("save.snapshot", t0, p);
+        }
+
+        static void read(Path p, DataStore store, boolean withCustomers) throws IOException {
+            long t0 = System.nanoTime();
+            store.clearBikes();
+            if (withCustomers) store.clearCustomers();
+            store.clearRentals();
+            try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(p, StandardOpenOption.READ)) {
+                java.nio.MappedByteBuffer buf = ch.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                if (buf.getInt() != MAGIC || buf.getInt() != VERSION) throw new IOException("Not a snapshot: " + p);
+                String[] dict = new String[readVarInt(buf)];
+                byte[] scratch = new byte[64];
+                for (int i = 0; i < dict.length; i++) {
+                    int len = readVarInt(buf);
+                    if (len > scratch.length) scratch = new byte[len];
+                    buf.get(scratch, 0, len);
+                    dict[i] = new String(scratch, 0, len, java.nio.charset.StandardCharsets.UTF_8);
+                }
+                for (int i = readVarInt(buf); i > 0; i--) {
+                    Bike b = new Bike(dict[readVarInt(buf)], dict[readVarInt(buf)], readVarInt(buf));
+                    b.setAvailable(buf.get() != 0);
+                    store.addBike(b);
+                }
+                for (int i = readVarInt(buf); i > 0; i--) {
+                    store.addCustomer(new Customer(dict[readVarInt(buf)], dict[readVarInt(buf)], readVarInt(buf), dict[readVarInt(buf)]));
+                }
+                for (int i = readVarInt(buf); i > 0; i--) {
+                    store.addRental(dict[readVarInt(buf)], dict[readVarInt(buf)], dict[readVarInt(buf)], readVarInt(buf), readVarInt(buf),
+                            readVarInt(buf), readVarInt(buf), buf.get() != 0, fromSnapshotDay(readVarInt(buf) - 1), fromSnapshotDay(readVarInt(buf) - 1));
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt snapshot: " + p, e);
+            }
+            Metrics.loaded("load.snapshot", t0, store.bikeCount() + store.customerCount() + store.rentalCount());
+        }
+
+        private static void writeVarInt(DataOutputStream out, int v) throws IOException {
+            while ((v & ~0x7F) != 0) {
+                out.writeByte((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            out.writeByte(v);
+        }
+
+        private static int readVarInt(java.nio.ByteBuffer buf) {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buf.get();
+                v |= (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+        }
+
+        private static void intern(Map<String, Integer> dict, String v) {
+            if (!dict.containsKey(v)) dict.put(v, dict.size());
+        }
+
+        private static int toSnapshotDay(int day, String date) throws IOException {
+            if (day == RentalColumns.IRREGULAR) throw new IOException("Unsupported date for snapshot: " + date);
+            return day == RentalColumns.NO_DATE ? NO_DATE : day;
+        }
+
+        private static int fromSnapshotDay(int day) { return day == NO_DATE ? RentalColumns.NO_DATE : day; }
+    }
+
+    public interface MetricsMXBean {
+        Map<String, Long> getCounters();
+        Map<String, TimerStats> getTimers();
+        double getRentP99Micros();
+        double getReturnP99Micros();
+        long getSaveFailures();
+        String dump();
+        void reset();
+    }
+
+    public static class TimerStats {
+        private final long count;
+        private final double meanMicros, p50Micros, p99Micros, maxMicros;
+        TimerStats(long count, double meanMicros, double p50Micros, double p99Micros, double maxMicros) {
+            this.count = count; this.meanMicros = meanMicros; this.p50Micros = p50Micros; this.p99Micros = p99Micros; this.maxMicros = maxMicros;
+        }
+        public long getCount() { return count; }
+        public double getMeanMicros() { return meanMicros; }
+        public double getP50Micros() { return p50Micros; }
+        public double getP99Micros() { return p99Micros; }
+        public double getMaxMicros() { return maxMicros; }
+    }
+
+    static class Metrics implements MetricsMXBean {
+        static class Timer {
+            private static final int BUCKETS = 248;
+            private final java.util.concurrent.atomic.LongAdder count = new java.util.concurrent.atomic.LongAdder();
+            private final java.util.concurrent.atomic.LongAdder totalNanos = new java.util.concurrent.atomic.LongAdder();
+            private final java.util.concurrent.atomic.LongAccumulator maxNanos = new java.util.concurrent.atomic.LongAccumulator(Math::max, 0);
+            private final java.util.concurrent.atomic.AtomicLongArray buckets = new java.util.concurrent.atomic.AtomicLongArray(BUCKETS);
+
+            void recordSince(long startNanos) { record(System.nanoTime() - startNanos); }
+
+            void record(long nanos) {
+                if (nanos < 0) nanos = 0;
+                count.increment();
+                totalNanos.add(nanos);
+                maxNanos.accumulate(nanos);
+                buckets.incrementAndGet(bucket(nanos));
+            }
+
+            // Four buckets per power of two, so a reported percentile is within 25% of the true value.
+            static int bucket(long v) {
+                if (v < 4) return (int) v;
+                int exp = 63 - Long.numberOfLeadingZeros(v);
+                return (exp - 1) * 4 + (int) ((v >>> (exp - 2)) & 3);
+            }
+
+            static long lowerBound(int b) { return b < 4 ? b : (4L + b % 4) << (b / 4 - 1); }
+
+            double percentileMicros(double p) {
+                long[] counts = new long[BUCKETS];
+                long n = 0;
+                for (int i = 0; i < BUCKETS; i++) n += counts[i] = buckets.get(i);
+                if (n == 0) return 0;
+                long rank = (long) Math.ceil(p * n), seen = 0;
+                for (int i = 0; i < BUCKETS; i++) {
+                    seen += counts[i];
+                    if (seen >= rank) {
+                        long mid = (lowerBound(i) + (i + 1 < BUCKETS ? lowerBound(i + 1) : lowerBound(i))) / 2;
+                        return Math.min(mid, maxNanos.get()) / 1000.0;
+                    }
+                }
+                return maxNanos.get() / 1000.0;
+            }
+
+            TimerStats stats() {
+                long n = count.sum();
+                return new TimerStats(n, n == 0 ? 0 : totalNanos.sum() / 1000.0 / n,
+                        percentileMicros(0.50), percentileMicros(0.99), maxNanos.get() / 1000.0);
+            }
+
+            void reset() {
+                count.reset();
+                totalNanos.reset();
+                maxNanos.reset();
+                for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+            }
+        }
+
+        private static final Map<String, java.util.concurrent.atomic.LongAdder> COUNTERS = new java.util.concurrent.ConcurrentSkipListMap<>();
+        private static final Map<String, Timer> TIMERS = new java.util.concurrent.ConcurrentSkipListMap<>();
+        static final Timer RENT = timer("rent"), RETURN = timer("return"), REGISTER = timer("register"), LOOKUP = timer("lookup");
+        static final java.util.concurrent.atomic.LongAdder LOOKUPS = counter("lookups");
+
+        static Timer timer(String name) { return TIMERS.computeIfAbsent(name, k -> new Timer()); }
+        static java.util.concurrent.atomic.LongAdder counter(String name) { return COUNTERS.computeIfAbsent(name, k -> new java.util.concurrent.atomic.LongAdder()); }
+        static void count(String name, long n) { counter(name).add(n); }
+
+        // Lookups cost less than the bookkeeping, so one in 16 is timed and the lookup count is estimated from the samples.
+        static long sampleStart() {
+            return (java.util.concurrent.ThreadLocalRandom.current().nextInt() & 15) == 0 ? System.nanoTime() : 0;
+        }
+
+        static void sampleEnd(long startNanos) {
+            if (startNanos == 0) return;
+            LOOKUP.recordSince(startNanos);
+            LOOKUPS.add(16);
+        }
+
+        static void loaded(String timer, long startNanos, long records) {
+            timer(timer).recordSince(startNanos);
+            count("records.loaded", records);
+        }
+
+        static void saved(String timer, long startNanos, Path p) {
+            timer(timer).recordSince(startNanos);
+            try { count("bytes.written", Files.size(p)); } catch (IOException ignored) {}
+        }
+
+        static void install() {
+            try {
+                java.lang.management.ManagementFactory.getPlatformMBeanServer()
+                        .registerMBean(new Metrics(), new javax.management.ObjectName("bikerental:type=Metrics"));
+            } catch (javax.management.JMException ignored) {}
+            long every = Long.getLong("bikerental.metricsLogSeconds", 0);
+            if (every <= 0) return;
+            java.util.concurrent.ScheduledExecutorService log = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "bikerental-metrics");
+                t.setDaemon(true);
+                return t;
+            });
+            log.scheduleAtFixedRate(() -> System.out.print(report()), every, every, java.util.concurrent.TimeUnit.SECONDS);
+        }
+
+        static String report() {
+            StringBuilder sb = new StringBuilder("metrics at ").append(java.time.LocalTime.now().withNano(0)).append(System.lineSeparator());
+            for (Map.Entry<String, java.util.concurrent.atomic.LongAdder> e : COUNTERS.entrySet()) {
+                sb.append(String.format(Locale.ROOT, "  %-16s %,d%n", e.getKey(), e.getValue().sum()));
+            }
+            for (Map.Entry<String, Timer> e : TIMERS.entrySet()) {
+                TimerStats s = e.getValue().stats();
+                if (s.getCount() == 0) continue;
+                sb.append(String.format(Locale.ROOT, "  %-16s n=%,d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus%n", e.getKey(),
+                        s.getCount(), s.getMeanMicros(), s.getP50Micros(), s.getP99Micros(), s.getMaxMicros()));
+            }
+            return sb.toString();
+        }
+
+        @Override public Map<String, Long> getCounters() {
+            Map<String, Long> out = new TreeMap<>();
+            COUNTERS.forEach((k, v) -> out.put(k, v.sum()));
+            return out;
+        }
+
+        @Override public Map<String, TimerStats> getTimers() {
+            Map<String, TimerStats> out = new TreeMap<>();
+            TIMERS.forEach((k, v) -> out.put(k, v.stats()));
+            return out;
+        }
+
+        @Override public double getRentP99Micros() { return RENT.percentileMicros(0.99); }
+        @Override public double getReturnP99Micros() { return RETURN.percentileMicros(0.99); }
+        @Override public long getSaveFailures() { return counter("save.failures").sum(); }
+        @Override public String dump() { return report(); }
+
+        @Override public void reset() {
+            COUNTERS.values().forEach(java.util.concurrent.atomic.LongAdder::reset);
+            TIMERS.values().forEach(Timer::reset);
+        }
+    }
+
+    static class RentalAnalytics implements RentalEngine.Listener {
+        static class BikeStats {
+            final String bikeId;
+            int rentals, ongoing;
+            long days, revenue;
+            BikeStats(String bikeId) { this.bikeId = bikeId; }
+            BikeStats copy() {
+                BikeStats c = new BikeStats(bikeId);
+                c.merge(this);
+                return c;
+            }
+            void merge(BikeStats o) { rentals += o.rentals; ongoing += o.ongoing; days += o.days; revenue += o.revenue; }
+        }
+
+        static class Totals {
+            final Map<String, BikeStats> byBike = new HashMap<>();
+            final TreeMap<Integer, Long> revenueByDay = new TreeMap<>();
+            final Map<String, Rental> ongoing = new LinkedHashMap<>();
+            long revenue, damageFees;
+            int returns, damagedReturns;
+            int firstStart = Integer.MAX_VALUE;
+
+            void add(Rental r) {
+                BikeStats b = start(r);
+                if (r.returned()) finish(r, b);
+                else { b.ongoing++; ongoing.put(r.rentalId(), r); }
+            }
+
+            void rented(Rental r) {
+                start(r).ongoing++;
+                ongoing.put(r.rentalId(), r);
+            }
+
+            void returned(Rental r) {
+                if (ongoing.remove(r.rentalId()) == null) return;
+                BikeStats b = byBike.get(r.bikeId());
+                b.ongoing--;
+                finish(r, b);
+            }
+
+            private BikeStats start(Rental r) {
+                BikeStats b = byBike.computeIfAbsent(r.bikeId(), BikeStats::new);
+                b.rentals++;
+                b.days += r.days();
+                int start = r.startDay();
+                if (start > RentalColumns.NO_DATE && start < firstStart) firstStart = start;
+                return b;
+            }
+
+            private void finish(Rental r, BikeStats b) {
+                int total = r.total(), damageFee = r.damageFee();
+                b.revenue += total;
+                revenueByDay.merge(r.returnDay() == RentalColumns.NO_DATE ? r.startDay() : r.returnDay(), (long) total, Long::sum);
+                revenue += total;
+                returns++;
+                damageFees += damageFee;
+                if (damageFee > 0) damagedReturns++;
+            }
+
+            void merge(Totals o) {
+                o.byBike.forEach((id, b) -> byBike.computeIfAbsent(id, BikeStats::new).merge(b));
+                o.revenueByDay.forEach((day, v) -> revenueByDay.merge(day, v, Long::sum));
+                ongoing.putAll(o.ongoing);
+                revenue += o.revenue; damageFees += o.damageFees; returns += o.returns; damagedReturns += o.damagedReturns;
+                firstStart = Math.min(firstStart, o.firstStart);
+            }
+        }
+
+        static class Report {
+            final Map<String, BikeStats> byBike = new HashMap<>();
+            final TreeMap<Integer, Long> revenueByDay;
+            final List<Rental> ongoing;
+            final long revenue, damageFees;
+            final int returns, damagedReturns;
+            final String since;
+            final long spanDays;
+
+            Report(Totals t) {
+                for (BikeStats b : t.byBike.values()) byBike.put(b.bikeId, b.copy());
+                revenueByDay = new TreeMap<>(t.revenueByDay);
+                ongoing = new ArrayList<>(t.ongoing.values());
+                revenue = t.revenue; damageFees = t.damageFees; returns = t.returns; damagedReturns = t.damagedReturns;
+                since = t.firstStart == Integer.MAX_VALUE ? "" : RentalColumns.dateString(t.firstStart);
+                spanDays = t.firstStart == Integer.MAX_VALUE ? 1 : Math.max(1, today() - t.firstStart + 1);
+            }
+
+            BikeStats bike(String bikeId) {
+                BikeStats b = byBike.get(bikeId);
+                return b != null ? b : new BikeStats(bikeId);
+            }
+
+            double utilization(BikeStats b) { return Math.min(1.0, (double) b.days / spanDays); }
+
+            double fleetUtilization(int bikeCount) {
+                if (bikeCount == 0) return 0;
+                long days = 0;
+                for (BikeStats b : byBike.values()) days += Math.min(b.days, spanDays);
+                return (double) days / spanDays / bikeCount;
+            }
+        }
+
+        private Totals totals = new Totals();
+
+        void rebuild(List<Rental> history, RentalArchive archive) {
+            Totals t = history.parallelStream().collect(Totals::new, Totals::add, Totals::merge);
+            if (archive != null) t.merge(archive.totals());
+            synchronized (this) { totals = t; }
+        }
+
+        synchronized Report report() { return new Report(totals); }
+
+        synchronized long revenueOn(int day) { return totals.revenueByDay.getOrDefault(day, 0L); }
+
+        synchronized Totals totals() {
+            Totals copy = new Totals();
+            copy.merge(totals);
+            return copy;
+        }
+
+        @Override public synchronized void rented(Rental r) { totals.rented(r); }
+        @Override public synchronized void returned(Rental r) { totals.returned(r); }
+    }
+
+    // Ongoing rentals ordered by due day. Instead of scanning rentals on a timer, one task is scheduled for the
+    // start of the day after the earliest due day; it flags whatever has fallen due and schedules the next one.
+    static class OverdueScheduler implements RentalEngine.Listener {
+        private static final class Due {
+            final String rentalId;
+            final int dueDay;
+            Due(String rentalId, int dueDay) { this.rentalId = rentalId; this.dueDay = dueDay; }
+        }
+
+        private final PriorityQueue<Due> queue = new PriorityQueue<>(Comparator.comparingInt((Due d) -> d.dueDay));
+        // Returned rentals are dropped from these maps at once and from the queue when they reach its head.
+        private final Map<String, Due> waiting = new HashMap<>();
+        private final Map<String, Due> overdue = new LinkedHashMap<>();
+        private final java.util.concurrent.ScheduledExecutorService timer = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bikerental-overdue");
+            t.setDaemon(true);
+            return t;
+        });
+        private final Runnable listener;
+        private java.util.concurrent.ScheduledFuture<?> wake;
+        private int wakeDay = Integer.MAX_VALUE;
+
+        OverdueScheduler(Runnable listener) { this.listener = listener; }
+
+        synchronized void rebuild(List<Rental> rentals) {
+            queue.clear();
+            waiting.clear();
+            overdue.clear();
+            for (Rental r : rentals) if (!r.returned()) enqueue(r);
+            check();
+        }
+
+        @Override public synchronized void rented(Rental r) {
+            enqueue(r);
+            check();
+        }
+
+        @Override public synchronized void returned(Rental r) {
+            waiting.remove(r.rentalId());
+            if (overdue.remove(r.rentalId()) != null) listener.run();
+        }
+
+        synchronized List<String> overdue() { return new ArrayList<>(overdue.keySet()); }
+        synchronized int overdueCount() { return overdue.size(); }
+        synchronized boolean isOverdue(String rentalId) { return overdue.containsKey(rentalId); }
+
+        private void enqueue(Rental r) {
+            if (r.dueDay() == Integer.MAX_VALUE) return;
+            Due d = new Due(r.rentalId(), r.dueDay());
+            waiting.put(d.rentalId, d);
+            queue.add(d);
+        }
+
+        // Flags rentals due before today, then makes sure the timer fires when the next one becomes late.
+        synchronized void check() {
+            int today = today();
+            int flagged = 0;
+            while (!queue.isEmpty() && (queue.peek().dueDay < today || waiting.get(queue.peek().rentalId) != queue.peek())) {
+                Due d = queue.poll();
+                if (waiting.remove(d.rentalId, d)) {
+                    overdue.put(d.rentalId, d);
+                    flagged++;
+                }
+            }
+            int next = queue.isEmpty() ? Integer.MAX_VALUE : queue.peek().dueDay + 1;
+            if (next != wakeDay || wake == null) {
+                if (wake != null) wake.cancel(false);
+                wakeDay = next;
+                wake = next == Integer.MAX_VALUE ? null : timer.schedule(this::wake, Math.max(0,
+                        LocalDate.ofEpochDay(next).atStartOfDay(clock.getZone()).toInstant().toEpochMilli()
+                                - clock.millis()), java.util.concurrent.TimeUnit.MILLISECONDS);
+            }
+            if (flagged > 0) {
+                Metrics.count("rentals.overdue", flagged);
+                listener.run();
+            }
+        }
+
+        private synchronized void wake() {
+            wake = null;
+            check();
+        }
+    }
+
+    // Imports and exports bikes, customers or rentals in the pipe-separated layout of the data files. Lines are
+    // read in batches that a thread pool parses and validates while earlier batches are committed in file order,
+    // so only a few batches are in memory at once. Accepted records go straight into the store and are saved
+    // with one rewrite of the data file; rejected lines are written to FILE.rejected.txt with the reason.
+    static class BulkTransfer {
+        enum Kind { BIKES, CUSTOMERS, RENTALS }
+
+        private static final int BATCH = 8192;
+
+        static final class Report {
+            final Kind kind;
+            int accepted, rejected, renumbered;
+            long millis;
+            Path rejects;
+            Report(Kind kind) { this.kind = kind; }
+            @Override public String toString() {
+                return String.format(Locale.ROOT, "Imported %,d %s in %.1f s", accepted, kind.name().toLowerCase(Locale.ROOT), millis / 1000.0)
+                        + (renumbered > 0 ? String.format(Locale.ROOT, ", %,d given new IDs", renumbered) : "")
+                        + (rejected > 0 ? String.format(Locale.ROOT, "; %,d rejected, see %s", rejected, rejects) : "; none rejected");
+            }
+        }
+
+        private static final class Batch {
+            final long firstLine;
+            final List<String> lines;
+            final Object[] parsed;
+            Batch(long firstLine, List<String> lines) { this.firstLine = firstLine; this.lines = lines; parsed = new Object[lines.size()]; }
+        }
+
+        // Bike and customer references are checked when the record is committed.
+        private static final class RentalRecord {
+            String rentalId, bikeId, customerId;
+            int days, baseRent, damageFee, total, startDay, returnDay;
+            boolean returned;
+        }
+
+        // Rental IDs are checked against the whole fleet, archives included, so an import can't reuse one.
+        static Report importFile(Kind kind, Path in, RentalEngine engine, PersistenceWriter writer, Fleet fleet) throws IOException {
+            long t0 = System.nanoTime();
+            Report report = new Report(kind);
+            report.rejects = in.resolveSibling(in.getFileName() + ".rejected.txt");
+            int threads = Runtime.getRuntime().availableProcessors();
+            java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(threads);
+            ArrayDeque<java.util.concurrent.Future<Batch>> inFlight = new ArrayDeque<>();
+            try (BufferedReader br = Files.newBufferedReader(in);
+                 PrintWriter rejects = new PrintWriter(Files.newBufferedWriter(report.rejects))) {
+                rejects.println("# line|reason|record");
+                long lineNo = 0;
+                List<String> lines = new ArrayList<>(BATCH);
+                while (true) {
+                    String line = br.readLine();
+                    if (line != null) lines.add(line);
+                    if (lines.size() == BATCH || (line == null && !lines.isEmpty())) {
+                        Batch batch = new Batch(lineNo + 1, lines);
+                        lineNo += lines.size();
+                        inFlight.add(pool.submit(() -> parse(kind, batch, engine.policy())));
+                        lines = new ArrayList<>(BATCH);
+                        if (inFlight.size() > 2 * threads) commit(kind, inFlight.poll(), engine, fleet, report, rejects);
+                    }
+                    if (line == null) break;
+                }
+                while (!inFlight.isEmpty()) commit(kind, inFlight.poll(), engine, fleet, report, rejects);
+                if (rejects.checkError()) throw new IOException("Could not write " + report.rejects);
+            } finally {
+                pool.shutdownNow();
+            }
+            if (report.rejected == 0) Files.deleteIfExists(report.rejects);
+            if (report.accepted > 0) {
+                switch (kind) {
+                    case BIKES: writer.markDirty(PersistenceWriter.Dirty.BIKES); break;
+                    case CUSTOMERS: writer.markDirty(PersistenceWriter.Dirty.CUSTOMERS); break;
+                    default: writer.markDirty(PersistenceWriter.Dirty.BIKES, PersistenceWriter.Dirty.RENTALS); break;
+                }
+            }
+            report.millis = (System.nanoTime() - t0) / 1_000_000;
+            Metrics.loaded("import." + kind.name().toLowerCase(Locale.ROOT), t0, report.accepted);
+            return report;
+        }
+
+        static int export(Kind kind, Path out, DataStore store) throws IOException {
+            switch (kind) {
+                case BIKES: writeBikes(out, store); return store.bikeCount();
+                case CUSTOMERS: writeCustomers(out, store); return store.customerCount();
+                default: writeRentals(out, store); return store.rentalCount();
+            }
+        }
+
+        private static Batch parse(Kind kind, Batch batch, RentalPolicy policy) {
+            for (int i = 0; i < batch.parsed.length; i++) batch.parsed[i] = parse(kind, batch.lines.get(i), policy);
+            return batch;
+        }
+
+        // The record, a String saying why the line is invalid, or null for blank and comment lines.
+        private static Object parse(Kind kind, String line, RentalPolicy policy) {
+            if (line.trim().isEmpty() || line.startsWith("#")) return null;
+            String[] p = line.split("\\|", -1);
+            try {
+                switch (kind) {
+                    case BIKES: {
+                        if (p.length < 4) return "expected id|model|rate|available";
+                        if (p[0].trim().isEmpty()) return "missing bike id";
+                        int rate = Integer.parseInt(p[2].trim());
+                        if (rate <= 0) return "rate must be positive";
+                        String available = p[3].trim();
+                        if (!available.equalsIgnoreCase("true") && !available.equalsIgnoreCase("false")) return "available must be true or false";
+                        Bike b = new Bike(p[0].trim(), p[1].trim(), rate);
+                        b.setAvailable(Boolean.parseBoolean(available));
+                        return b;
+                    }
+                    case CUSTOMERS: {
+                        if (p.length < 4) return "expected id|name|age|license";
+                        Customer c = new Customer(p[0].trim(), p[1].trim(), Integer.parseInt(p[2].trim()), p[3].trim());
+                        if (c.getName().isEmpty()) return "missing name";
+                        return policy.eligible(c) ? c : "not eligible: under 18 or license too short";
+                    }
+                    default: {
+                        if (p.length < 10) return "expected rid|bikeId|customerId|days|baseRent|damageFee|total|returned|startDate|returnDate";
+                        RentalRecord r = new RentalRecord();
+                        r.rentalId = p[0].trim();
+                        r.bikeId = p[1].trim();
+                        r.customerId = p[2].trim();
+                        r.days = Integer.parseInt(p[3].trim());
+                        r.baseRent = Integer.parseInt(p[4].trim());
+                        r.damageFee = Integer.parseInt(p[5].trim());
+                        r.total = Integer.parseInt(p[6].trim());
+                        r.returned = Boolean.parseBoolean(p[7].trim());
+                        r.startDay = RentalColumns.parseDay(p[8].trim());
+                        r.returnDay = RentalColumns.parseDay(p[9].trim());
+                        if (r.rentalId.isEmpty()) return "missing rental id";
+                        if (r.days < 1) return "days must be at least 1";
+                        if (r.startDay <= RentalColumns.NO_DATE) return "start date must be yyyy-mm-dd";
+                        if (r.returned ? r.returnDay <= RentalColumns.NO_DATE : r.returnDay != RentalColumns.NO_DATE) {
+                            return r.returned ? "returned rental needs a yyyy-mm-dd return date" : "ongoing rental has a return date";
+                        }
+                        return r;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return "not a number: " + e.getMessage();
+            }
+        }
+
+        private static void commit(Kind kind, java.util.concurrent.Future<Batch> next, RentalEngine engine, Fleet fleet, Report report,
+                                   PrintWriter rejects) throws IOException {
+            Batch batch;
+            try {
+                batch = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Import interrupted");
+            } catch (java.util.concurrent.ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+            for (int i = 0; i < batch.parsed.length; i++) {
+                Object record = batch.parsed[i];
+                if (record == null) continue;
+                String reason = record instanceof String ? (String) record : add(kind, record, engine, fleet, report);
+                if (reason == null) {
+                    report.accepted++;
+                } else {
+                    report.rejected++;
+                    rejects.printf(Locale.ROOT, "%d|%s|%s%n", batch.firstLine + i, reason, batch.lines.get(i));
+                }
+            }
+        }
+
+        // Null once the record is in the store, otherwise why it was rejected.
+        private static String add(Kind kind, Object record, RentalEngine engine, Fleet fleet, Report report) {
+            DataStore store = engine.store();
+            switch (kind) {
+                case BIKES: {
+                    Bike b = (Bike) record;
+                    if (store.findBike(b.getBikeId()) != null) return "bike id already exists";
+                    store.addBike(b);
+                    return null;
+                }
+                case CUSTOMERS: {
+                    Customer c = (Customer) record;
+                    if (store.findCustomer(c.getLicense()) != null) return "license already registered";
+                    if (c.getId().isEmpty() || store.findCustomerById(c.getId()) != null) {
+                        String id;
+                        do id = engine.newCustomerId(); while (store.findCustomerById(id) != null);
+                        c = new Customer(id, c.getName(), c.getAge(), c.getLicense());
+                        report.renumbered++;
+                    } else {
+                        engine.advanceCustomerSequence(RentalEngine.sequenceOf(c.getId()));
+                    }
+                    store.addCustomer(c);
+                    return null;
+                }
+                default: {
+                    RentalRecord r = (RentalRecord) record;
+                    if (store.findRental(r.rentalId) != null || fleet.hasRental(r.rentalId)) return "rental id already exists";
+                    Bike b = store.findBike(r.bikeId);
+                    if (b == null) return "unknown bike";
+                    if (store.findCustomerById(r.customerId) == null) return "unknown customer";
+                    if (!r.returned && !b.tryClaim()) return "bike is already out on a rental";
+                    store.addRental(r.rentalId, r.bikeId, r.customerId, r.days, r.baseRent, r.damageFee, r.total, r.returned, r.startDay, r.returnDay);
+                    engine.advanceRentalSequence(RentalEngine.sequenceOf(r.rentalId));
+                    return null;
+                }
+            }
+        }
+    }
+
+    static class RentalArchive {
+        static class Segment {
+            final Path file;
+            final int minNumber, maxNumber, count, firstDay, lastDay;
+            Segment(Path file, int minNumber, int maxNumber, int count, int firstDay, int lastDay) {
+                this.file = file; this.minNumber = minNumber; this.maxNumber = maxNumber; this.count = count;
+                this.firstDay = firstDay; this.lastDay = lastDay;
+            }
+        }
+
+        private final Path dir;
+        private final int afterDays;
+        private List<Segment> segments;
+        private RentalAnalytics.Totals totals;
+        private final Map<Path, DataStore> loaded = new LinkedHashMap<Path, DataStore>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Path, DataStore> eldest) { return size() > 8; }
+        };
+
+        RentalArchive(Path dir, int afterDays) { this.dir = dir; this.afterDays = afterDays; }
+
+        private Path index() { return dir.resolve("index.txt"); }
+
+        // The index is a few lines per segment; the segments themselves are only read when a lookup needs them.
+        private void readIndex() {
+            if (segments != null) return;
+            segments = new ArrayList<>();
+            totals = new RentalAnalytics.Totals();
+            if (!Files.exists(index())) return;
+            try (BufferedReader br = Files.newBufferedReader(index())) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] parts = line.split("\\|", -1);
+                    try {
+                        switch (parts[0]) {
+                            case "S":
+                                segments.add(new Segment(dir.resolve(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]),
+                                        Integer.parseInt(parts[4]), Integer.parseInt(parts[5]), Integer.parseInt(parts[6])));
+                                totals.revenue += Long.parseLong(parts[7]);
+                                totals.damageFees += Long.parseLong(parts[8]);
+                                totals.returns += Integer.parseInt(parts[4]);
+                                totals.damagedReturns += Integer.parseInt(parts[9]);
+                                totals.firstStart = Math.min(totals.firstStart, Integer.parseInt(parts[5]));
+                                break;
+                            case "B": {
+                                RentalAnalytics.BikeStats b = totals.byBike.computeIfAbsent(parts[1], RentalAnalytics.BikeStats::new);
+                                b.rentals += Integer.parseInt(parts[2]);
+                                b.days += Long.parseLong(parts[3]);
+                                b.revenue += Long.parseLong(parts[4]);
+                                break;
+                            }
+                            case "D":
+                                totals.revenueByDay.merge(Integer.parseInt(parts[1]), Long.parseLong(parts[2]), Long::sum);
+                                break;
+                            default:
+                                break;
+                        }
+                    } catch (RuntimeException e) {
+                        Metrics.count("load.failures", 1);
+                    }
+                }
+            } catch (IOException e) {
+                Metrics.count("load.failures", 1);
+            }
+        }
+
+        synchronized RentalAnalytics.Totals totals() {
+            readIndex();
+            RentalAnalytics.Totals copy = new RentalAnalytics.Totals();
+            copy.merge(totals);
+            return copy;
+        }
+
+        synchronized int maxNumber() {
+            readIndex();
+            int max = 0;
+            for (Segment s : segments) max = Math.max(max, s.maxNumber);
+            return max;
+        }
+
+        synchronized int segmentCount() { readIndex(); return segments.size(); }
+
+        synchronized Rental find(String rentalId) {
+            int number = RentalColumns.parseNumber(rentalId);
+            if (number < 0) return null;
+            readIndex();
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                Segment s = segments.get(i);
+                if (number < s.minNumber || number > s.maxNumber) continue;
+                Rental r = load(s).findRental(rentalId);
+                if (r != null) return r;
+            }
+            return null;
+        }
+
+        // Archived rentals that started between the two days, skipping any that are still in the hot store.
+        synchronized List<Rental> rentals(DataStore hot, int fromDay, int toDay) {
+            readIndex();
+            List<Rental> out = new ArrayList<>();
+            for (Segment s : segments) {
+                if (s.lastDay < fromDay || s.firstDay > toDay) continue;
+                for (Rental r : load(s).rentals()) if (hot.findRental(r.rentalId()) == null) out.add(r);
+            }
+            return out;
+        }
+
+        private DataStore load(Segment s) {
+            DataStore data = loaded.get(s.file);
+            if (data != null) return data;
+            long t0 = System.nanoTime();
+            data = new DataStore();
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                    new java.util.zip.GZIPInputStream(Files.newInputStream(s.file), 1 << 16), java.nio.charset.StandardCharsets.UTF_8))) {
+                readRentals(br, data, s.file);
+            } catch (Exception e) {
+                Metrics.count("load.failures", 1);
+            }
+            Metrics.loaded("load.archive", t0, data.rentalCount());
+            loaded.put(s.file, data);
+            return data;
+        }
+
+        // Moves returned rentals older than the cutoff into new gzip segments, one per start month, then drops them from the store.
+        synchronized int archive(DataStore store) throws IOException {
+            if (afterDays <= 0) return 0;
+            readIndex();
+            int cutoff = today() - afterDays;
+            RentalColumns columns = store.rentalColumns();
+            int n = columns.size();
+            BitSet moved = new BitSet(n);
+            Map<String, List<Rental>> byMonth = new TreeMap<>();
+            for (int row = 0; row < n; row++) {
+                Rental r = new Rental(columns, row);
+                if (!archivable(r, cutoff)) continue;
+                moved.set(row);
+                if (covered(r.number()) && find(r.rentalId()) != null) continue;
+                byMonth.computeIfAbsent(r.startDate().substring(0, 7), k -> new ArrayList<>()).add(r);
+            }
+            if (byMonth.isEmpty()) return 0;
+            Files.createDirectories(dir);
+            StringBuilder index = new StringBuilder();
+            List<Segment> added = new ArrayList<>();
+            for (Map.Entry<String, List<Rental>> month : byMonth.entrySet()) {
+                Path file = dir.resolve(segmentName(month.getKey()));
+                long t0 = System.nanoTime();
+                Path tmp = tempFile(file);
+                try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(new java.util.zip.GZIPOutputStream(
+                        Files.newOutputStream(tmp), 1 << 16), java.nio.charset.StandardCharsets.UTF_8))) {
+                    printRentals(pw, month.getValue());
+                    if (pw.checkError()) throw new IOException("Could not write " + tmp);
+                }
+                replaceFile(tmp, file);
+                Metrics.saved("save.archive", t0, file);
+                added.add(summarize(file, month.getValue(), index));
+            }
+            try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(index(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(index.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                while (buf.hasRemaining()) ch.write(buf);
+                ch.force(true);
+            }
+            segments.addAll(added);
+            if (!store.removeRentals(columns, moved)) return 0;
+            return moved.cardinality();
+        }
+
+        // Segments are written before rentals.txt is rewritten, so after a crash in between the same rentals are
+        // in both. Drops the hot copies at load so the totals don't count them twice; returns how many.
+        synchronized int dropArchived(DataStore store) {
+            if (afterDays <= 0) return 0;
+            readIndex();
+            int cutoff = today() - afterDays;
+            RentalColumns columns = store.rentalColumns();
+            BitSet archived = new BitSet(columns.size());
+            for (int row = 0; row < columns.size(); row++) {
+                Rental r = new Rental(columns, row);
+                if (archivable(r, cutoff) && covered(r.number()) && find(r.rentalId()) != null) archived.set(row);
+            }
+            return !archived.isEmpty() && store.removeRentals(columns, archived) ? archived.cardinality() : 0;
+        }
+
+        private static boolean archivable(Rental r, int cutoff) {
+            return r.returned() && r.number() >= 0 && r.startDay() > RentalColumns.NO_DATE
+                    && r.returnDay() > RentalColumns.NO_DATE && r.returnDay() < cutoff;
+        }
+
+        private boolean covered(int number) {
+            for (Segment s : segments) if (number >= s.minNumber && number <= s.maxNumber) return true;
+            return false;
+        }
+
+        private String segmentName(String month) {
+            for (int seq = 0; ; seq++) {
+                String name = "rentals-" + month + "-" + seq + ".txt.gz";
+                if (!Files.exists(dir.resolve(name))) return name;
+            }
+        }
+
+        private Segment summarize(Path file, List<Rental> rentals, StringBuilder index) {
+            RentalAnalytics.Totals t = new RentalAnalytics.Totals();
+            int min = Integer.MAX_VALUE, max = 0, last = Integer.MIN_VALUE;
+            for (Rental r : rentals) {
+                t.add(r);
+                min = Math.min(min, r.number());
+                max = Math.max(max, r.number());
+                last = Math.max(last, r.startDay());
+            }
+            String name = file.getFileName().toString();
+            index.append(String.format(Locale.ROOT, "S|%s|%d|%d|%d|%d|%d|%d|%d|%d%n", name, min, max, rentals.size(),
+                    t.firstStart, last, t.revenue, t.damageFees, t.damagedReturns));
+            t.byBike.forEach((id, b) -> index.append(String.format(Locale.ROOT, "B|%s|%d|%d|%d%n", id, b.rentals, b.days, b.revenue)));
+            t.revenueByDay.forEach((day, v) -> index.append(String.format(Locale.ROOT, "D|%d|%d%n", day, v)));
+            totals.merge(t);
+            return new Segment(file, min, max, rentals.size(), t.firstStart, last);
+        }
+    }
+
+    static class RentalEngine {
+        interface Listener {
+            default void registered(Customer c) {}
+            default void rented(Rental r) {}
+            default void returned(Rental r) {}
+            default void reserved(Reservation v) {}
+            default void cancelled(Reservation v) {}
+        }
+
+        private final DataStore store;
+        private final RentalPolicy policy;
+        private final java.util.concurrent.atomic.AtomicInteger customerSeq, rentalSeq, reservationSeq;
+        private final List<Listener> listeners = new java.util.concurrent.CopyOnWriteArrayList<>();
+        private final EventBus events = new EventBus();
+
+        RentalEngine(DataStore store, RentalPolicy policy) { this(store, policy, null); }
+
+        // Engines of the same fleet share their sequences, so rental and reservation numbers stay unique across branches.
+        RentalEngine(DataStore store, RentalPolicy policy, RentalEngine shareSequencesWith) {
+            this.store = store;
+            this.policy = policy;
+            if (shareSequencesWith != null) {
+                customerSeq = shareSequencesWith.customerSeq;
+                rentalSeq = shareSequencesWith.rentalSeq;
+                reservationSeq = shareSequencesWith.reservationSeq;
+            } else {
+                customerSeq = new java.util.concurrent.atomic.AtomicInteger();
+                rentalSeq = new java.util.concurrent.atomic.AtomicInteger();
+                reservationSeq = new java.util.concurrent.atomic.AtomicInteger();
+            }
+            resetSequences();
+        }
+
+        void addListener(Listener l) { listeners.add(l); }
+        EventBus events() { return events; }
+
+        void resetSequences() {
+            int c = store.customerCount(), r = store.rentalCount();
+            for (Customer cust : store.customers()) c = Math.max(c, sequenceOf(cust.getId()));
+            for (Rental rental : store.rentals()) r = Math.max(r, sequenceOf(rental.rentalId()));
+            int v = 0;
+            for (Reservation res : store.reservations()) v = Math.max(v, sequenceOf(res.reservationId()));
+            customerSeq.accumulateAndGet(c, Math::max);
+            rentalSeq.accumulateAndGet(r, Math::max);
+            reservationSeq.accumulateAndGet(v, Math::max);
+        }
+
+        static int sequenceOf(String id) {
+            try {
+                return Integer.parseInt(id.substring(1));
+            } catch (RuntimeException e) {
+                return 0;
+            }
+        }
+
+        void advanceRentalSequence(int atLeast) { rentalSeq.accumulateAndGet(atLeast, Math::max); }
+        void advanceCustomerSequence(int atLeast) { customerSeq.accumulateAndGet(atLeast, Math::max); }
+        String newCustomerId() { return "C" + customerSeq.incrementAndGet(); }
+
+        DataStore store() { return store; }
+        RentalPolicy policy() { return policy; }
+
+        Customer register(String name, int age, String license) throws InvalidLicenseException {
+            long t0 = System.nanoTime();
+            try {
+                if (!policy.eligible(new Customer("", name, age, license))) {
+                    throw new InvalidLicenseException("Age should be at least 18 and license must be valid.");
+                }
+                Customer c = new Customer(newCustomerId(), name, age, license);
+                store.addCustomer(c);
+                for (Listener l : listeners) l.registered(c);
+                events.publish(new EventBus.CustomerRegistered(c));
+                return c;
+            } catch (InvalidLicenseException e) {
+                Metrics.count("register.rejected", 1);
+                throw e;
+            } finally {
+                Metrics.REGISTER.recordSince(t0);
+            }
+        }
+
+        Rental rent(String license, String bikeId, int days) throws RentalException {
+            long t0 = System.nanoTime();
+            try {
+                Customer c = store.findCustomer(license);
+                if (c == null) throw new RentalException("Customer not found.");
+                if (days < 1) throw new RentalException("Days must be at least 1.");
+                Bike b = store.findBike(bikeId);
+                if (b == null || !b.tryClaim()) throw new RentalException("Bike not available.");
+                int today = today();
+                List<Reservation> pickedUp = new ArrayList<>(0);
+                Reservation booked = store.holdForRental(b.getBikeId(), c.getId(), today, today + days, pickedUp);
+                if (booked != null) {
+                    b.setAvailable(true);
+                    throw new RentalException("Bike is reserved from " + booked.startDate() + ".");
+                }
+                int cost = b.getRate() * days;
+                Rental r = store.addRental("R" + rentalSeq.incrementAndGet(), b.getBikeId(), c.getId(), days, cost, 0, cost, false,
+                        today, RentalColumns.NO_DATE);
+                for (Listener l : listeners) l.rented(r);
+                for (Reservation v : pickedUp) for (Listener l : listeners) l.cancelled(v);
+                events.publish(new EventBus.BikeRented(r));
+                return r;
+            } catch (RentalException e) {
+                Metrics.count("rent.rejected", 1);
+                throw e;
+            } finally {
+                Metrics.RENT.recordSince(t0);
+            }
+        }
+
+        Reservation reserve(String license, String bikeId, int startDay, int days) throws RentalException {
+            try {
+                Customer c = store.findCustomer(license);
+                if (c == null) throw new RentalException("Customer not found.");
+                if (days < 1) throw new RentalException("Days must be at least 1.");
+                if (startDay < today()) throw new RentalException("Reservations must start today or later.");
+                Bike b = store.findBike(bikeId);
+                if (b == null) throw new RentalException("Bike not found.");
+                Reservation v = new Reservation("V" + reservationSeq.incrementAndGet(), b.getBikeId(), c.getId(), startDay, days);
+                if (!store.addReservation(v, true)) throw new RentalException("Bike is already booked for some of those days.");
+                for (Listener l : listeners) l.reserved(v);
+                return v;
+            } catch (RentalException e) {
+                Metrics.count("reserve.rejected", 1);
+                throw e;
+            }
+        }
+
+        Reservation cancelReservation(String reservationId) throws RentalException {
+            Reservation v = store.removeReservation(reservationId);
+            if (v == null) throw new RentalException("Reservation not found.");
+            for (Listener l : listeners) l.cancelled(v);
+            return v;
+        }
+
+        Rental returnBike(String rentalId, String damageLevel) throws RentalException {
+            long t0 = System.nanoTime();
+            try {
+                Rental r = store.findRental(rentalId);
+                if (r == null) throw new RentalException("Invalid Rental.");
+                int today = today();
+                int fee = policy.damageFee(damageLevel);
+                r = store.completeReturn(r, fee, r.baseRent() + fee + policy.lateFee(r, r.daysLate(today)), today);
+                if (r == null) throw new RentalException("Invalid Rental.");
+                for (Listener l : listeners) l.returned(r);
+                Bike b = store.findBike(r.bikeId());
+                if (b != null) b.setAvailable(true);
+                events.publish(new EventBus.BikeReturned(r));
+                return r;
+            } catch (RentalException e) {
+                Metrics.count("return.rejected", 1);
+                throw e;
+            } finally {
+                Metrics.RETURN.recordSince(t0);
+            }
+        }
+    }
+
+    // Domain events from the rent, return and register paths, delivered on the calling thread after the change is
+    // made. Subscribers must be quick; anything touching Swing hands off to the EDT.
+    static class EventBus {
+        interface Event {}
+
+        static final class BikeRented implements Event {
+            final String rentalId, bikeId, customerId;
+            final int days, baseRent, startDay;
+            BikeRented(Rental r) {
+                rentalId = r.rentalId(); bikeId = r.bikeId(); customerId = r.customerId();
+                days = r.days(); baseRent = r.baseRent(); startDay = r.startDay();
+            }
+        }
+
+        static final class BikeReturned implements Event {
+            final String rentalId, bikeId;
+            final int damageFee, total, returnDay;
+            BikeReturned(Rental r) {
+                rentalId = r.rentalId(); bikeId = r.bikeId();
+                damageFee = r.damageFee(); total = r.total(); returnDay = r.returnDay();
+            }
+        }
+
+        static final class CustomerRegistered implements Event {
+            final String customerId, name, license;
+            CustomerRegistered(Customer c) { customerId = c.getId(); name = c.getName(); license = c.getLicense(); }
+        }
+
+        private final List<java.util.function.Consumer<Event>> subscribers = new java.util.concurrent.CopyOnWriteArrayList<>();
+
+        void subscribe(java.util.function.Consumer<Event> subscriber) { subscribers.add(subscriber); }
+
+        void publish(Event e) { for (java.util.function.Consumer<Event> s : subscribers) s.accept(e); }
+    }
+
+    // A branch's bikes out and free and today's takings, counted once at startup and then moved by each event in O(1).
+    static class LiveStats implements java.util.function.Consumer<EventBus.Event> {
+        private final java.util.concurrent.atomic.AtomicInteger available = new java.util.concurrent.atomic.AtomicInteger();
+        private final java.util.concurrent.atomic.AtomicInteger rented = new java.util.concurrent.atomic.AtomicInteger();
+        private final Runnable changed;
+        private int today;
+        private long revenueToday;
+
+        LiveStats(Runnable changed) { this.changed = changed; }
+
+        void reset(DataStore store, RentalAnalytics analytics) {
+            int free = 0, out = 0;
+            for (Bike b : store.bikes()) if (b.isAvailable()) free++; else out++;
+            available.set(free);
+            rented.set(out);
+            synchronized (this) {
+                today = today();
+                revenueToday = analytics.revenueOn(today);
+            }
+            changed.run();
+        }
+
+        @Override public void accept(EventBus.Event e) {
+            if (e instanceof EventBus.BikeRented) {
+                available.decrementAndGet();
+                rented.incrementAndGet();
+            } else if (e instanceof EventBus.BikeReturned) {
+                EventBus.BikeReturned r = (EventBus.BikeReturned) e;
+                available.incrementAndGet();
+                rented.decrementAndGet();
+                returned(r.returnDay, r.total);
+            }
+            changed.run();
+        }
+
+        private synchronized void returned(int day, int total) {
+            rollOver();
+            if (day != today) return;
+            revenueToday += total;
+        }
+
+        private void rollOver() {
+            int now = today();
+            if (now == today) return;
+            today = now;
+            revenueToday = 0;
+        }
+
+        int available() { return available.get(); }
+        int rented() { return rented.get(); }
+        synchronized long revenueToday() { rollOver(); return revenueToday; }
+    }
+
+    // One pickup point with its own bikes, rentals, reservations and data files. The home branch lives in the
+    // working directory and owns the customers; the others share its CustomerDirectory and ID sequences.
+    static class Branch {
+        final String name;
+        final Path dir;
+        final boolean home;
+        final DataStore store;
+        final Storage storage;
+        final RentalJournal journal;
+        final RentalArchive archive;
+        final PersistenceWriter writer;
+        final RentalEngine engine;
+        final RentalAnalytics analytics = new RentalAnalytics();
+        final OverdueScheduler overdue;
+
+        private Branch(String name, Path dir, Branch home, RentalPolicy policy, Runnable saved, Runnable overdueChanged) {
+            this.name = name;
+            this.dir = dir;
+            this.home = home == null;
+            store = home == null ? new DataStore() : new DataStore(home.store.customerDirectory());
+            storage = openStorage(dir, name, home == null);
+            journal = openJournal(dir, storage);
+            archive = openArchive(dir);
+            writer = newWriter(storage, store, journal, archive, home == null ? null : home.writer, saved);
+            engine = new RentalEngine(store, policy, home == null ? null : home.engine);
+            overdue = new OverdueScheduler(overdueChanged);
+            engine.addListener(writer);
+            engine.addListener(analytics);
+            engine.addListener(overdue);
+        }
+
+        // -Dbikerental.branches lists the branches, home first; the others keep their files under branches/<name>.
+        static List<Branch> open(RentalPolicy policy, Runnable saved, Runnable overdueChanged) {
+            List<Branch> out = new ArrayList<>();
+            for (String name : System.getProperty("bikerental.branches", "Srinagar,Gulmarg,Pahalgam").split(",")) {
+                name = name.trim();
+                if (name.isEmpty()) continue;
+                Branch home = out.isEmpty() ? null : out.get(0);
+                Path dir = home == null ? HOME : Paths.get(BRANCHES_DIR, name.toLowerCase(Locale.ROOT));
+                out.add(new Branch(name, dir, home, policy, saved, overdueChanged));
+            }
+            return out;
+        }
+
+        void load(Runnable stageDone) {
+            loadAll(storage, home, store, journal, writer, stageDone);
+            // Rentals already in the archive were left in the file by a save that crashed after archiving; rewrite it without them.
+            if (archive.dropArchived(store) > 0) writer.markDirty(PersistenceWriter.Dirty.RENTALS);
+            analytics.rebuild(store.rentals(), archive);
+            overdue.rebuild(store.rentals());
+        }
+
+        void start() {
+            engine.resetSequences();
+            engine.advanceRentalSequence(archive.maxNumber());
+            writer.start();
+        }
+
+        @Override public String toString() { return name; }
+    }
+
+    // Lookups and reports across every branch. Each runs one task per branch on the common fork/join pool.
+    static class Fleet {
+        final List<Branch> branches;
+
+        Fleet(List<Branch> branches) { this.branches = branches; }
+
+        Branch home() { return branches.get(0); }
+
+        Branch branch(String name) {
+            for (Branch b : branches) if (b.name.equalsIgnoreCase(name)) return b;
+            return null;
+        }
+
+        void load(Runnable stageDone) { branches.parallelStream().forEach(b -> b.load(stageDone)); }
+
+        void start() { branches.forEach(Branch::start); }
+
+        void close(long timeoutMillis) {
+            // Customers are written by the home writer, so it closes last.
+            for (int i = branches.size() - 1; i >= 0; i--) branches.get(i).writer.close(timeoutMillis);
+        }
+
+        Branch branchOfBike(String bikeId) {
+            return branches.parallelStream().filter(b -> b.store.findBike(bikeId) != null).findAny().orElse(null);
+        }
+
+        Branch branchOfRental(String rentalId) {
+            return branches.parallelStream().filter(b -> b.store.findRental(rentalId) != null).findAny().orElse(null);
+        }
+
+        // Sequential, unlike findRental: the import calls it once per record.
+        boolean hasRental(String rentalId) {
+            for (Branch b : branches) if (b.store.findRental(rentalId) != null) return true;
+            for (Branch b : branches) if (b.archive.find(rentalId) != null) return true;
+            return false;
+        }
+
+        // Recent rentals first; the archives are only opened when no branch still holds the rental.
+        Rental findRental(String rentalId) {
+            Branch b = branchOfRental(rentalId);
+            if (b != null) return b.store.findRental(rentalId);
+            return branches.parallelStream().map(x -> x.archive.find(rentalId)).filter(Objects::nonNull).findAny().orElse(null);
+        }
+
+        int bikeCount() { return branches.parallelStream().mapToInt(b -> b.store.bikeCount()).sum(); }
+
+        long available() {
+            return branches.parallelStream().mapToLong(b -> b.store.bikes().stream().filter(Bike::isAvailable).count()).sum();
+        }
+
+        int overdueCount() { return branches.parallelStream().mapToInt(b -> b.overdue.overdueCount()).sum(); }
+
+        RentalAnalytics.Report report() {
+            return new RentalAnalytics.Report(branches.parallelStream().map(b -> b.analytics.totals())
+                    .collect(RentalAnalytics.Totals::new, RentalAnalytics.Totals::merge, RentalAnalytics.Totals::merge));
+        }
+    }
+
+    static class BookingServer {
+        interface Route { String handle(Map<String, String> params) throws Exception; }
+
+        private final RentalEngine engine;
+        private final com.sun.net.httpserver.HttpServer server;
+        private final java.util.concurrent.ExecutorService executor = requestExecutor();
+
+        BookingServer(RentalEngine engine, int port) throws IOException {
+            this.engine = engine;
+            server = com.sun.net.httpserver.HttpServer.create(new java.net.InetSocketAddress(port), 1024);
+            server.setExecutor(executor);
+            server.createContext("/bikes", route("GET", this::bikes));
+            server.createContext("/customers", route("GET", this::customer));
+            server.createContext("/rent", route("POST", this::rent));
+            server.createContext("/return", route("POST", this::returnBike));
+            server.createContext("/reserve", route("POST", this::reserve));
+        }
+
+        static java.util.concurrent.ExecutorService requestExecutor() {
+            try {
+                return (java.util.concurrent.ExecutorService) java.util.concurrent.Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return java.util.concurrent.Executors.newCachedThreadPool();
+            }
+        }
+
+        static String executorKind() {
+            try {
+                java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return "virtual threads";
+            } catch (NoSuchMethodException e) {
+                return "platform thread pool";
+            }
+        }
+
+        void start() { server.start(); }
+        int port() { return server.getAddress().getPort(); }
+
+        void stop() {
+            server.stop(1);
+            executor.shutdown();
+        }
+
+        private String bikes(Map<String, String> params) {
+            boolean onlyAvailable = Boolean.parseBoolean(params.get("available"));
+            List<Bike> bikes = engine.store().bikes();
+            if (params.containsKey("from")) {
+                // A date that doesn't parse is a bad request, not a query for the whole fleet.
+                int from = RentalColumns.parseDay(params.get("from"));
+                if (from <= RentalColumns.NO_DATE) throw new IllegalArgumentException("from must be a yyyy-mm-dd date.");
+                int days = Integer.parseInt(params.getOrDefault("days", "1"));
+                if (days < 1) throw new IllegalArgumentException("days must be at least 1.");
+                bikes = engine.store().freeBikes(from, from + days);
+            }
+            StringBuilder sb = new StringBuilder("[");
+            for (Bike b : bikes) {
+                if (onlyAvailable && !b.isAvailable()) continue;
+                if (sb.length() > 1) sb.append(',');
+                sb.append(json(b));
+            }
+            return sb.append(']').toString();
+        }
+
+        private String customer(Map<String, String> params) {
+            Customer c = engine.store().findCustomer(params.get("license"));
+            return c == null ? null : json(c);
+        }
+
+        private String rent(Map<String, String> params) throws RentalException {
+            return json(engine.rent(params.get("license"), params.get("bike"), Integer.parseInt(params.get("days"))));
+        }
+
+        private String reserve(Map<String, String> params) throws RentalException {
+            int from = RentalColumns.parseDay(params.get("from"));
+            if (from <= RentalColumns.NO_DATE) throw new RentalException("from must be a yyyy-mm-dd date.");
+            return json(engine.reserve(params.get("license"), params.get("bike"), from, Integer.parseInt(params.get("days"))));
+        }
+
+        private String returnBike(Map<String, String> params) throws RentalException {
+            return json(engine.returnBike(params.get("rental"), params.get("damage")));
+        }
+
+        private com.sun.net.httpserver.HttpHandler route(String method, Route route) {
+            return ex -> {
+                int status = 200;
+                String body;
+                try {
+                    if (!method.equals(ex.getRequestMethod())) {
+                        status = 405;
+                        body = error("Use " + method + ".");
+                    } else {
+                        body = route.handle(params(ex));
+                        if (body == null) { status = 404; body = error("Not found."); }
+                    }
+                } catch (RentalException | InvalidLicenseException e) {
+                    status = 409;
+                    body = error(e.getMessage());
+                } catch (Exception e) {
+                    status = 400;
+                    body = error("Bad request: " + e);
+                }
+                byte[] bytes = body.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+                ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                ex.sendResponseHeaders(status, bytes.length);
+                try (OutputStream out = ex.getResponseBody()) { out.write(bytes); }
+            };
+        }
+
+        private static Map<String, String> params(com.sun.net.httpserver.HttpExchange ex) throws IOException {
+            Map<String, String> params = new HashMap<>();
+            parseForm(ex.getRequestURI().getRawQuery(), params);
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = ex.getRequestBody()) {
+                byte[] buf = new byte[1024];
+                for (int len; (len = in.read(buf)) > 0; ) body.write(buf, 0, len);
+            }
+            parseForm(body.toString("UTF-8"), params);
+            return params;
+        }
+
+        private static void parseForm(String form, Map<String, String> into) throws UnsupportedEncodingException {
+            if (form == null || form.isEmpty()) return;
+            for (String pair : form.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq <= 0) continue;
+                into.put(java.net.URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                        java.net.URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+
+        static String json(Bike b) {
+            return "{\"id\":" + quote(b.getBikeId()) + ",\"model\":" + quote(b.getModel())
+                    + ",\"rate\":" + b.getRate() + ",\"available\":" + b.isAvailable() + "}";
+        }
+
+        static String json(Customer c) {
+            return "{\"id\":" + quote(c.getId()) + ",\"name\":" + quote(c.getName())
+                    + ",\"age\":" + c.getAge() + ",\"license\":" + quote(c.getLicense()) + "}";
+        }
+
+        static String json(Rental r) {
+            return "{\"id\":" + quote(r.rentalId()) + ",\"bikeId\":" + quote(r.bikeId()) + ",\"customerId\":" + quote(r.customerId())
+                    + ",\"days\":" + r.days() + ",\"baseRent\":" + r.baseRent() + ",\"damageFee\":" + r.damageFee()
+                    + ",\"total\":" + r.total() + ",\"returned\":" + r.returned()
+                    + ",\"startDate\":" + quote(r.startDate()) + ",\"returnDate\":" + quote(r.returnDate()) + "}";
+        }
+
+        static String json(Reservation v) {
+            return "{\"id\":" + quote(v.reservationId()) + ",\"bikeId\":" + quote(v.bikeId()) + ",\"customerId\":" + quote(v.customerId())
+                    + ",\"startDate\":" + quote(v.startDate()) + ",\"days\":" + v.days() + "}";
+        }
+
+        private static String error(String message) { return "{\"error\":" + quote(message) + "}"; }
+
+        static String quote(String v) {
+            StringBuilder sb = new StringBuilder("\"");
+            for (char ch : v.toCharArray()) {
+                if (ch == '"' || ch == '\\') sb.append('\\').append(ch);
+                else if (ch < 0x20) sb.append(String.format("\\u%04x", (int) ch));
+                else sb.append(ch);
+            }
+            return sb.append('"').toString();
+        }
+    }
+
+    static class InvalidLicenseException extends Exception { public InvalidLicenseException(String msg) { super(msg); } }
+
+    static class RentalException extends Exception {
+        private static final long serialVersionUID = 1L;
+        public RentalException(String msg) { super(msg); }
+    }
+
+    interface RentalPolicy { boolean eligible(Customer c); int damageFee(String level); int lateFee(Rental r, int daysLate); }
+
+    static class SimplePolicy implements RentalPolicy {
+        public boolean eligible(Customer c) { return c.getAge() >= 18 && c.getLicense().trim().length() >= 8; }
+        public int damageFee(String level) {
+            switch (String.valueOf(level)) {
+                case "Minor Scratch": return 200;
+                case "Moderate Damage": return 500;
+                case "Heavy Damage": return 1000;
+                default: return 0;
+            }
+        }
+        // One and a half times the daily rate for each day past the due date.
+        public int lateFee(Rental r, int daysLate) { return daysLate <= 0 ? 0 : daysLate * (r.baseRent() / Math.max(1, r.days())) * 3 / 2; }
+    }
+
+    private static void runTool(String[] args) throws IOException {
+        Path dir = Paths.get(args.length > 1 ? args[1] : ".");
+        switch (args[0]) {
+            case "--to-snapshot": {
+                DataStore data = new DataStore();
+                loadBikes(dir.resolve(BIKES_FILE), data);
+                loadCustomers(dir.resolve(CUSTOMERS_FILE), data);
+                loadRentals(dir.resolve(RENTALS_FILE), data);
+                SnapshotFile.write(dir.resolve(SNAPSHOT_FILE), data, true);
+                System.out.println("Wrote " + dir.resolve(SNAPSHOT_FILE) + " (" + data.rentalCount() + " rentals)");
+                break;
+            }
+            case "--from-snapshot": {
+                DataStore data = new DataStore();
+                SnapshotFile.read(dir.resolve(SNAPSHOT_FILE), data, true);
+                writeBikes(dir.resolve(BIKES_FILE), data);
+                writeCustomers(dir.resolve(CUSTOMERS_FILE), data);
+                writeRentals(dir.resolve(RENTALS_FILE), data);
+                System.out.println("Wrote text files in " + dir + " (" + data.rentalCount() + " rentals)");
+                break;
+            }
+            case "--server":
+                runServer(args.length > 1 ? Integer.parseInt(args[1]) : 8080, args.length > 2 ? args[2] : null);
+                break;
+            case "--import":
+            case "--export":
+                if (args.length < 3) throw new IllegalArgumentException(args[0] + " needs bikes|customers|rentals and a file");
+                bulkTransfer(args[0].equals("--import"), BulkTransfer.Kind.valueOf(args[1].toUpperCase(Locale.ROOT)), Paths.get(args[2]),
+                        args.length > 3 ? args[3] : null);
+                break;
+            default:
+                System.err.println("Usage: java BikeRentalSystem [--to-snapshot DIR | --from-snapshot DIR | --server PORT [BRANCH] | --import KIND FILE [BRANCH]"
+                        + " | --export KIND FILE [BRANCH]]");
+        }
+    }
+
+    // Works on the data files in the current directory, like the GUI; run it while the GUI and server are closed.
+    private static void bulkTransfer(boolean importing, BulkTransfer.Kind kind, Path file, String branchName) throws IOException {
+        Fleet fleet = openFleet();
+        Branch branch = pickBranch(fleet, branchName);
+        if (!importing) {
+            int n = BulkTransfer.export(kind, file, branch.store);
+            System.out.printf(Locale.ROOT, "Exported %,d %s from %s to %s%n", n, kind.name().toLowerCase(Locale.ROOT), branch, file);
+            return;
+        }
+        // Starting resets the ID sequences past everything just loaded, so imported records don't reuse them.
+        fleet.start();
+        BulkTransfer.Report report = BulkTransfer.importFile(kind, file, branch.engine, branch.writer, fleet);
+        System.out.println(branch + ": " + report);
+        long t0 = System.nanoTime();
+        fleet.close(600_000);
+        System.out.printf(Locale.ROOT, "Saved in %.1f s%n", (System.nanoTime() - t0) / 1e9);
+    }
+
+    private static Fleet openFleet() throws IOException {
+        Fleet fleet = new Fleet(Branch.open(new SimplePolicy(), () -> {}, () -> {}));
+        fleet.load(() -> {});
+        for (Branch b : fleet.branches) {
+            IOException failure = b.writer.loadFailure();
+            if (failure != null) throw new IOException(b + " did not load, nothing was changed: " + failure.getMessage(), failure);
+        }
+        return fleet;
+    }
+
+    private static Branch pickBranch(Fleet fleet, String name) {
+        if (name == null) return fleet.home();
+        Branch b = fleet.branch(name);
+        if (b == null) throw new IllegalArgumentException("No branch " + name + " (branches: " + fleet.branches + ")");
+        return b;
+    }
+
+    // Serves one branch; the others are loaded too so that IDs stay unique and customers are saved by the home branch.
+    private static void runServer(int port, String branchName) throws IOException {
+        Fleet fleet = openFleet();
+        Branch branch = pickBranch(fleet, branchName);
+        fleet.start();
+        BookingServer server = new BookingServer(branch.engine, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            fleet.close(10_000);
+        }));
+        server.start();
+        System.out.println("Booking API for " + branch + " listening on http://localhost:" + server.port()
+                + " (" + branch.store.bikeCount() + " bikes)");
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            Metrics.install();
+            runTool(args);
+            return;
+        }
+        launchNanos = System.nanoTime();
+        SwingUtilities.invokeLater(() -> {
+            BikeRentalSystem app = new BikeRentalSystem();
+            app.setVisible(true);
+            app.startLoading();
+        });
     }
 }
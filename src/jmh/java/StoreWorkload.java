@@ -0,0 +1,83 @@
+import java.nio.file.*;
+import java.util.*;
+
+// Benchmark bodies for bikerental.jmh.StoreBenchmark, on the same generated data as BikeRentalTools --bench.
+public final class StoreWorkload implements bikerental.jmh.Workload {
+    private BikeRentalSystem.DataStore data;
+    private BikeRentalSystem.RentalEngine engine;
+    private Path dir, out;
+    private int size;
+    private final String[] bikeIds = new String[1024], licenses = new String[1024], rentalIds = new String[1024], prefixes = new String[1024];
+
+    @Override public void setUp(int rentals, Path dir) throws Exception {
+        this.dir = dir;
+        size = rentals;
+        out = dir.resolve("out.txt");
+        data = BikeRentalTools.sampleData(rentals, 42);
+        BikeRentalSystem.writeBikes(dir.resolve(BikeRentalSystem.BIKES_FILE), data);
+        BikeRentalSystem.writeCustomers(dir.resolve(BikeRentalSystem.CUSTOMERS_FILE), data);
+        BikeRentalSystem.writeRentals(dir.resolve(BikeRentalSystem.RENTALS_FILE), data);
+
+        Random rnd = new Random(rentals);
+        List<BikeRentalSystem.Bike> free = new ArrayList<>();
+        for (BikeRentalSystem.Bike b : data.bikes()) if (b.isAvailable()) free.add(b);
+        List<BikeRentalSystem.Customer> customers = data.customers();
+        List<BikeRentalSystem.Rental> all = data.rentals();
+        for (int i = 0; i < 1024; i++) {
+            // Every rentReturn hands its bike back, so cycling through the free bikes never finds one out.
+            bikeIds[i] = free.get(i % free.size()).getBikeId();
+            licenses[i] = customers.get(rnd.nextInt(customers.size())).getLicense();
+            rentalIds[i] = all.get(rnd.nextInt(all.size())).rentalId();
+            BikeRentalSystem.Customer c = customers.get(rnd.nextInt(customers.size()));
+            prefixes[i] = i % 2 == 0 ? c.getLicense().substring(0, 8) : c.getName().substring(0, c.getName().length() - 1);
+        }
+        data.indexCustomers();
+        engine = new BikeRentalSystem.RentalEngine(data, new BikeRentalSystem.SimplePolicy());
+        engine.resetSequences();
+    }
+
+    @Override public Object loadBikes() throws Exception {
+        BikeRentalSystem.DataStore s = new BikeRentalSystem.DataStore();
+        BikeRentalSystem.loadBikes(dir.resolve(BikeRentalSystem.BIKES_FILE), s);
+        return s;
+    }
+
+    @Override public Object loadCustomers() throws Exception {
+        BikeRentalSystem.DataStore s = new BikeRentalSystem.DataStore();
+        BikeRentalSystem.loadCustomers(dir.resolve(BikeRentalSystem.CUSTOMERS_FILE), s);
+        return s;
+    }
+
+    @Override public Object loadRentals() throws Exception {
+        BikeRentalSystem.DataStore s = new BikeRentalSystem.DataStore();
+        BikeRentalSystem.loadRentals(dir.resolve(BikeRentalSystem.RENTALS_FILE), s);
+        return s;
+    }
+
+    @Override public Object writeBikes() throws Exception { BikeRentalSystem.writeBikes(out, data); return out; }
+    @Override public Object writeCustomers() throws Exception { BikeRentalSystem.writeCustomers(out, data); return out; }
+    @Override public Object writeRentals() throws Exception { BikeRentalSystem.writeRentals(out, data); return out; }
+
+    @Override public Object rentReturn(int i) throws Exception {
+        BikeRentalSystem.Rental r = engine.rent(licenses[i & 1023], bikeIds[i & 1023], 1 + i % 7);
+        return engine.returnBike(r.rentalId(), "No Damage");
+    }
+
+    @Override public void trim() {
+        BikeRentalSystem.RentalColumns columns = data.rentalColumns();
+        if (columns.size() <= size) return;
+        BitSet added = new BitSet(columns.size());
+        added.set(size, columns.size());
+        data.removeRentals(columns, added);
+    }
+
+    @Override public Object searchCustomers(int i) { return data.searchCustomers(prefixes[i & 1023], 8); }
+    @Override public Object findRental(int i) { return data.findRental(rentalIds[i & 1023]); }
+
+    @Override public void tearDown() throws Exception {
+        for (String f : new String[]{BikeRentalSystem.BIKES_FILE, BikeRentalSystem.CUSTOMERS_FILE, BikeRentalSystem.RENTALS_FILE, "out.txt"}) {
+            Files.deleteIfExists(dir.resolve(f));
+        }
+        Files.deleteIfExists(dir);
+    }
+}
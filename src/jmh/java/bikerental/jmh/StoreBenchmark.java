@@ -0,0 +1,59 @@
+package bikerental.jmh;
+
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// The JMH counterpart of `BikeRentalTools --bench`: loaders, writers, rent/return and customer search on generated stores.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoreBenchmark {
+    @Param({"1000", "100000"})
+    int rentals;
+
+    private Workload workload;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = (Workload) Class.forName("StoreWorkload").getDeclaredConstructor().newInstance();
+        workload.setUp(rentals, Files.createTempDirectory("bikerental-jmh"));
+    }
+
+    // Per iteration rather than per call, so rentReturn's store grows by one iteration's worth of rentals at most.
+    @Setup(Level.Iteration)
+    public void trim() { workload.trim(); }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception { workload.tearDown(); }
+
+    @Benchmark @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object loadBikes() throws Exception { return workload.loadBikes(); }
+
+    @Benchmark @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object loadCustomers() throws Exception { return workload.loadCustomers(); }
+
+    @Benchmark @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object loadRentals() throws Exception { return workload.loadRentals(); }
+
+    @Benchmark @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object writeBikes() throws Exception { return workload.writeBikes(); }
+
+    @Benchmark @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object writeCustomers() throws Exception { return workload.writeCustomers(); }
+
+    @Benchmark @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object writeRentals() throws Exception { return workload.writeRentals(); }
+
+    @Benchmark @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object rentReturn() throws Exception { return workload.rentReturn(next++); }
+
+    @Benchmark @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object searchCustomers() { return workload.searchCustomers(next++); }
+
+    @Benchmark @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object findRental() { return workload.findRental(next++); }
+}
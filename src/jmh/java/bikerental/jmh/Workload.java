@@ -0,0 +1,29 @@
+package bikerental.jmh;
+
+import java.nio.file.Path;
+
+// JMH won't generate code for benchmarks in the unnamed package, and a named package can't refer to BikeRentalSystem,
+// so the benchmarks drive it through this interface. StoreWorkload, next to it in the unnamed package, implements it.
+public interface Workload {
+    // Generates that many rentals and writes the text files into dir.
+    void setUp(int rentals, Path dir) throws Exception;
+
+    Object loadBikes() throws Exception;
+    Object loadCustomers() throws Exception;
+    Object loadRentals() throws Exception;
+
+    Object writeBikes() throws Exception;
+    Object writeCustomers() throws Exception;
+    Object writeRentals() throws Exception;
+
+    // Rents the i-th sample bike to the i-th sample customer and returns it.
+    Object rentReturn(int i) throws Exception;
+
+    // Drops the rentals rentReturn added, so the store is back at its generated size.
+    void trim();
+
+    Object searchCustomers(int i);
+    Object findRental(int i);
+
+    void tearDown() throws Exception;
+}
@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BookingServerTest {
+    private BikeRentalSystem.BookingServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        BikeRentalSystem.DataStore store = new BikeRentalSystem.DataStore();
+        store.addBike(new BikeRentalSystem.Bike("B1", "Pulsar 180", 500));
+        store.addBike(new BikeRentalSystem.Bike("B2", "Duke 200", 700));
+        BikeRentalSystem.RentalEngine engine = new BikeRentalSystem.RentalEngine(store, new BikeRentalSystem.SimplePolicy());
+        engine.resetSequences();
+        engine.register("Asha", 30, "JK0112345678");
+        server = new BikeRentalSystem.BookingServer(engine, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() { server.stop(); }
+
+    private HttpURLConnection request(String method, String path, String form) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) new URL("http://localhost:" + server.port() + path).openConnection();
+        c.setRequestMethod(method);
+        if (form != null) {
+            c.setDoOutput(true);
+            try (OutputStream out = c.getOutputStream()) { out.write(form.getBytes(StandardCharsets.UTF_8)); }
+        }
+        return c;
+    }
+
+    private static String body(HttpURLConnection c) throws IOException {
+        InputStream in = c.getResponseCode() < 400 ? c.getInputStream() : c.getErrorStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        for (int len; (len = in.read(buf)) > 0; ) out.write(buf, 0, len);
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    void listsBikes() throws IOException {
+        HttpURLConnection c = request("GET", "/bikes", null);
+        assertEquals(200, c.getResponseCode());
+        assertTrue(body(c).contains("\"id\":\"B2\""));
+    }
+
+    @Test
+    void badFromDateIsABadRequest() throws IOException {
+        assertEquals(400, request("GET", "/bikes?from=2026-13-40", null).getResponseCode());
+        assertEquals(400, request("GET", "/bikes?from=", null).getResponseCode());
+        assertEquals(400, request("GET", "/bikes?from=2026-11-01&days=0", null).getResponseCode());
+    }
+
+    @Test
+    void rentedBikeIsNotFreeForTheDates() throws IOException {
+        assertEquals(200, request("POST", "/rent", "license=JK0112345678&bike=B1&days=3").getResponseCode());
+        HttpURLConnection c = request("GET", "/bikes?from=" + java.time.LocalDate.now(BikeRentalSystem.clock) + "&days=1", null);
+        assertEquals(200, c.getResponseCode());
+        String bikes = body(c);
+        assertFalse(bikes.contains("\"id\":\"B1\""), bikes);
+        assertTrue(bikes.contains("\"id\":\"B2\""), bikes);
+    }
+
+    @Test
+    void badNumberIsABadRequestAndConflictsAre409() throws IOException {
+        assertEquals(400, request("POST", "/rent", "license=JK0112345678&bike=B1&days=many").getResponseCode());
+        assertEquals(200, request("POST", "/rent", "license=JK0112345678&bike=B1&days=1").getResponseCode());
+        assertEquals(409, request("POST", "/rent", "license=JK0112345678&bike=B1&days=1").getResponseCode());
+    }
+
+    @Test
+    void wrongMethodIs405() throws IOException {
+        assertEquals(405, request("GET", "/rent", null).getResponseCode());
+    }
+}
@@ -0,0 +1,88 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Branches keep their files in the working directory, which the build points at a scratch directory.
+class BulkTransferTest {
+    @TempDir Path in;
+    private BikeRentalSystem.Fleet fleet;
+
+    private static void clean() throws IOException {
+        for (String f : new String[]{"bikes.txt", "customers.txt", "rentals.txt", "reservations.txt", "rentals.journal", "snapshot.bin", "archive", "branches"}) {
+            Path p = Paths.get(f);
+            if (!Files.exists(p)) continue;
+            try (Stream<Path> walk = Files.walk(p)) {
+                for (Path q : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) Files.delete(q);
+            }
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        clean();
+        System.setProperty("bikerental.branches", "Srinagar,Gulmarg");
+        Files.write(Paths.get("bikes.txt"), Collections.singletonList("B1|Pulsar 180|500|true"));
+        Files.write(Paths.get("customers.txt"), Collections.singletonList("C1|Asha|30|JK0112345678"));
+        Files.write(Paths.get("rentals.txt"), Collections.singletonList("R1|B1|C1|2|1000|0|1000|true|2020-01-10|2020-01-12"));
+        Files.createDirectories(Paths.get("branches", "gulmarg"));
+        Files.write(Paths.get("branches", "gulmarg", "bikes.txt"), Collections.singletonList("B7|Duke 200|700|true"));
+        Files.write(Paths.get("branches", "gulmarg", "rentals.txt"), Collections.singletonList("R2|B7|C1|1|700|0|700|true|2026-01-10|2026-01-11"));
+
+        fleet = new BikeRentalSystem.Fleet(BikeRentalSystem.Branch.open(new BikeRentalSystem.SimplePolicy(), () -> {}, () -> {}));
+        fleet.load(() -> {});
+        BikeRentalSystem.Branch home = fleet.home();
+        assertEquals(1, home.archive.archive(home.store));
+        fleet.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        fleet.close(10_000);
+        System.clearProperty("bikerental.branches");
+        clean();
+    }
+
+    private List<String> rejected(BikeRentalSystem.BulkTransfer.Report report) throws IOException {
+        return report.rejected == 0 ? Collections.emptyList() : Files.readAllLines(report.rejects);
+    }
+
+    @Test
+    void rentalIdsInTheArchiveOrAnotherBranchAreRejected() throws IOException {
+        Path file = in.resolve("rentals.txt");
+        Files.write(file, Arrays.asList(
+                "R1|B1|C1|2|1000|0|1000|true|2020-01-10|2020-01-12",
+                "R2|B1|C1|1|500|0|500|true|2026-02-01|2026-02-02",
+                "R3|B1|C1|1|500|0|500|true|2026-02-03|2026-02-04"));
+        BikeRentalSystem.Branch home = fleet.home();
+        BikeRentalSystem.BulkTransfer.Report report = BikeRentalSystem.BulkTransfer.importFile(
+                BikeRentalSystem.BulkTransfer.Kind.RENTALS, file, home.engine, home.writer, fleet);
+
+        assertEquals(1, report.accepted);
+        assertEquals(2, report.rejected);
+        List<String> lines = rejected(report);
+        assertTrue(lines.contains("1|rental id already exists|R1|B1|C1|2|1000|0|1000|true|2020-01-10|2020-01-12"), lines.toString());
+        assertTrue(lines.contains("2|rental id already exists|R2|B1|C1|1|500|0|500|true|2026-02-01|2026-02-02"), lines.toString());
+        assertNotNull(home.store.findRental("R3"));
+    }
+
+    @Test
+    void invalidLinesAreReportedWithTheirLineNumbers() throws IOException {
+        Path file = in.resolve("bikes.txt");
+        Files.write(file, Arrays.asList("# id|model|rate|available", "B2|Apache RTR|-5|true", "B3|Apache RTR|650|true", "B1|Again|500|true"));
+        BikeRentalSystem.Branch home = fleet.home();
+        BikeRentalSystem.BulkTransfer.Report report = BikeRentalSystem.BulkTransfer.importFile(
+                BikeRentalSystem.BulkTransfer.Kind.BIKES, file, home.engine, home.writer, fleet);
+
+        assertEquals(1, report.accepted);
+        List<String> lines = rejected(report);
+        assertTrue(lines.contains("2|rate must be positive|B2|Apache RTR|-5|true"), lines.toString());
+        assertTrue(lines.contains("4|bike id already exists|B1|Again|500|true"), lines.toString());
+    }
+}
@@ -0,0 +1,45 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CustomerDirectoryTest {
+    private static BikeRentalSystem.CustomerDirectory directory() {
+        BikeRentalSystem.CustomerDirectory d = new BikeRentalSystem.CustomerDirectory();
+        d.add(new BikeRentalSystem.Customer("C1", "Asha Wani", 30, "JK01-1234 5678"));
+        d.add(new BikeRentalSystem.Customer("C2", "Bilal Ahmad", 41, "JK02 99887766"));
+        return d;
+    }
+
+    @Test
+    void searchFindsNothingUntilIndexed() {
+        BikeRentalSystem.CustomerDirectory d = directory();
+        assertTrue(d.search("asha", 8).isEmpty());
+        d.index();
+        assertEquals("C1", d.search("asha", 8).get(0).getId());
+    }
+
+    @Test
+    void searchMatchesLicenseIgnoringPunctuationAndLaterNameWords() {
+        BikeRentalSystem.CustomerDirectory d = directory();
+        d.index();
+        assertEquals("C1", d.search("jk011234", 8).get(0).getId());
+        assertEquals("C2", d.search("Ahm", 8).get(0).getId());
+    }
+
+    @Test
+    void customersAddedAfterIndexingAreFound() {
+        BikeRentalSystem.CustomerDirectory d = directory();
+        d.index();
+        d.add(new BikeRentalSystem.Customer("C3", "Asif Dar", 25, "JK03 11112222"));
+        List<BikeRentalSystem.Customer> found = d.search("as", 8);
+        assertEquals(2, found.size());
+    }
+
+    @Test
+    void searchStopsAtTheLimit() {
+        BikeRentalSystem.CustomerDirectory d = directory();
+        d.index();
+        assertEquals(1, d.search("jk", 1).size());
+    }
+}
@@ -0,0 +1,66 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PersistenceWriterTest {
+    @TempDir Path dir;
+
+    private static final List<String> RENTALS = Arrays.asList(
+            "# rid|bikeId|customerId|days|baseRent|damageFee|total|returned|startDate|returnDate",
+            "R1|B1|C1|2|1000|0|1000|true|2026-01-10|2026-01-12",
+            "R2|B1|C1|x|1000|0|1000|true|2026-01-13|2026-01-15",
+            "R3|B1|C1|2|1000|0|1000|true|2026-01-16|2026-01-18");
+
+    private BikeRentalSystem.PersistenceWriter writer(BikeRentalSystem.DataStore store, BikeRentalSystem.Storage storage,
+                                                      BikeRentalSystem.RentalJournal journal) {
+        return new BikeRentalSystem.PersistenceWriter(store, storage, journal, null, null, 1000, 0, () -> {});
+    }
+
+    @Test
+    void nothingIsRewrittenAfterAFailedLoad() throws IOException {
+        Files.write(dir.resolve("bikes.txt"), Collections.singletonList("B1|Pulsar 180|500|true"));
+        Files.write(dir.resolve("customers.txt"), Collections.singletonList("C1|Asha|30|JK0112345678"));
+        Files.write(dir.resolve("rentals.txt"), RENTALS);
+        BikeRentalSystem.DataStore store = new BikeRentalSystem.DataStore();
+        BikeRentalSystem.Storage storage = new BikeRentalSystem.FlatFileStorage(dir, true);
+        BikeRentalSystem.RentalJournal journal = new BikeRentalSystem.RentalJournal(dir.resolve("rentals.journal"));
+        BikeRentalSystem.PersistenceWriter writer = writer(store, storage, journal);
+
+        BikeRentalSystem.loadAll(storage, true, store, journal, writer, () -> {});
+        assertNotNull(writer.loadFailure());
+        writer.start();
+        writer.markDirty(BikeRentalSystem.PersistenceWriter.Dirty.values());
+        writer.close(10_000);
+
+        assertEquals(RENTALS, Files.readAllLines(dir.resolve("rentals.txt")));
+        assertEquals(Collections.singletonList("B1|Pulsar 180|500|true"), Files.readAllLines(dir.resolve("bikes.txt")));
+    }
+
+    @Test
+    void compactionSavesTheFilesAndEmptiesTheJournal() throws Exception {
+        BikeRentalSystem.DataStore store = new BikeRentalSystem.DataStore();
+        BikeRentalSystem.Storage storage = new BikeRentalSystem.FlatFileStorage(dir, true);
+        BikeRentalSystem.RentalJournal journal = new BikeRentalSystem.RentalJournal(dir.resolve("rentals.journal"));
+        BikeRentalSystem.PersistenceWriter writer = writer(store, storage, journal);
+        BikeRentalSystem.loadAll(storage, true, store, journal, writer, () -> {});
+        assertNull(writer.loadFailure());
+
+        BikeRentalSystem.RentalEngine engine = new BikeRentalSystem.RentalEngine(store, new BikeRentalSystem.SimplePolicy());
+        engine.addListener(writer);
+        engine.resetSequences();
+        writer.start();
+        engine.register("Asha", 30, "JK0112345678");
+        String bikeId = store.bikes().get(0).getBikeId();
+        BikeRentalSystem.Rental r = engine.rent("JK0112345678", bikeId, 2);
+        writer.close(10_000);
+
+        BikeRentalSystem.DataStore back = new BikeRentalSystem.DataStore();
+        BikeRentalSystem.loadRentals(dir.resolve("rentals.txt"), back);
+        assertNotNull(back.findRental(r.rentalId()));
+        assertFalse(Files.exists(dir.resolve("rentals.journal")));
+    }
+}
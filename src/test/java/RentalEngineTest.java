@@ -0,0 +1,56 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RentalEngineTest {
+    private BikeRentalSystem.DataStore store;
+    private BikeRentalSystem.RentalEngine engine;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new BikeRentalSystem.DataStore();
+        store.addBike(new BikeRentalSystem.Bike("B1", "Pulsar 180", 500));
+        engine = new BikeRentalSystem.RentalEngine(store, new BikeRentalSystem.SimplePolicy());
+        engine.resetSequences();
+        engine.register("Asha", 30, "JK0112345678");
+    }
+
+    @Test
+    void rentThenReturnFreesTheBike() throws Exception {
+        BikeRentalSystem.Rental r = engine.rent("JK0112345678", "B1", 3);
+        assertEquals(1500, r.baseRent());
+        assertFalse(store.findBike("B1").isAvailable());
+
+        BikeRentalSystem.Rental done = engine.returnBike(r.rentalId(), "No Damage");
+        assertTrue(done.returned());
+        assertEquals(1500, done.total());
+        assertTrue(store.findBike("B1").isAvailable());
+    }
+
+    @Test
+    void bikeOutOnARentalCannotBeRentedAgain() throws Exception {
+        engine.rent("JK0112345678", "B1", 1);
+        assertThrows(BikeRentalSystem.RentalException.class, () -> engine.rent("JK0112345678", "B1", 1));
+    }
+
+    @Test
+    void rentalIsReturnedOnlyOnce() throws Exception {
+        BikeRentalSystem.Rental r = engine.rent("JK0112345678", "B1", 1);
+        engine.returnBike(r.rentalId(), "No Damage");
+        assertThrows(BikeRentalSystem.RentalException.class, () -> engine.returnBike(r.rentalId(), "No Damage"));
+    }
+
+    @Test
+    void underageCustomerIsNotRegistered() {
+        assertThrows(BikeRentalSystem.InvalidLicenseException.class, () -> engine.register("Kid", 15, "JK0187654321"));
+    }
+
+    @Test
+    void rentalIdsKeepIncreasing() throws Exception {
+        String first = engine.rent("JK0112345678", "B1", 1).rentalId();
+        engine.returnBike(first, "No Damage");
+        String second = engine.rent("JK0112345678", "B1", 1).rentalId();
+        assertTrue(BikeRentalSystem.RentalEngine.sequenceOf(second) > BikeRentalSystem.RentalEngine.sequenceOf(first));
+    }
+}
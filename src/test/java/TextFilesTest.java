@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TextFilesTest {
+    @TempDir Path dir;
+
+    private static BikeRentalSystem.DataStore sample() {
+        BikeRentalSystem.DataStore data = new BikeRentalSystem.DataStore();
+        data.addBike(new BikeRentalSystem.Bike("B1", "Pulsar 180", 500));
+        data.addBike(new BikeRentalSystem.Bike("B2", "Himalayan 411", 900));
+        data.addCustomer(new BikeRentalSystem.Customer("C1", "Asha Wani", 30, "JK0112345678"));
+        int day = BikeRentalSystem.RentalColumns.parseDay("2026-01-10");
+        data.addRental("R1", "B1", "C1", 2, 1000, 0, 1000, true, day, day + 2);
+        data.addRental("R2", "B2", "C1", 3, 2700, 0, 2700, false, day + 5, BikeRentalSystem.RentalColumns.NO_DATE);
+        return data;
+    }
+
+    @Test
+    void writtenFilesLoadBack() throws IOException {
+        BikeRentalSystem.DataStore data = sample();
+        BikeRentalSystem.writeBikes(dir.resolve("bikes.txt"), data);
+        BikeRentalSystem.writeCustomers(dir.resolve("customers.txt"), data);
+        BikeRentalSystem.writeRentals(dir.resolve("rentals.txt"), data);
+
+        BikeRentalSystem.DataStore back = new BikeRentalSystem.DataStore();
+        BikeRentalSystem.loadBikes(dir.resolve("bikes.txt"), back);
+        BikeRentalSystem.loadCustomers(dir.resolve("customers.txt"), back);
+        BikeRentalSystem.loadRentals(dir.resolve("rentals.txt"), back);
+
+        assertEquals(2, back.bikeCount());
+        assertEquals(900, back.findBike("B2").getRate());
+        assertEquals("Asha Wani", back.findCustomer("JK0112345678").getName());
+        assertEquals(2, back.rentalCount());
+        assertEquals("2026-01-12", back.findRental("R1").returnDate());
+        assertFalse(back.findRental("R2").returned());
+    }
+
+    @Test
+    void saveReplacesTheFileWithoutLeavingTheTempFile() throws IOException {
+        Path rentals = dir.resolve("rentals.txt");
+        Files.write(rentals, Collections.singletonList("R9|B1|C1|1|500|0|500|true|2026-01-01|2026-01-02"));
+        BikeRentalSystem.writeRentals(rentals, sample());
+        assertEquals(3, Files.readAllLines(rentals).size());
+        assertFalse(Files.exists(dir.resolve("rentals.txt.tmp")));
+    }
+
+    @Test
+    void badLineFailsTheLoadWithFileAndLineNumber() throws IOException {
+        Path rentals = dir.resolve("rentals.txt");
+        Files.write(rentals, Arrays.asList(
+                "# rid|bikeId|customerId|days|baseRent|damageFee|total|returned|startDate|returnDate",
+                "R1|B1|C1|2|1000|0|1000|true|2026-01-10|2026-01-12",
+                "R2|B1|C1|x|1000|0|1000|true|2026-01-13|2026-01-15",
+                "R3|B1|C1|2|1000|0|1000|true|2026-01-16|2026-01-18"));
+        IOException e = assertThrows(IOException.class, () -> BikeRentalSystem.loadRentals(rentals, new BikeRentalSystem.DataStore()));
+        assertTrue(e.getMessage().contains("rentals.txt line 3"), e.getMessage());
+    }
+
+    @Test
+    void badBikeLineFailsTheLoad() throws IOException {
+        Path bikes = dir.resolve("bikes.txt");
+        Files.write(bikes, Arrays.asList("B1|Pulsar 180|500|true", "B2|Duke 200|fast|true"));
+        IOException e = assertThrows(IOException.class, () -> BikeRentalSystem.loadBikes(bikes, new BikeRentalSystem.DataStore()));
+        assertTrue(e.getMessage().contains("bikes.txt line 2"), e.getMessage());
+    }
+}
@@ -0,0 +1,139 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// --bench: loaders, writers, lookups and rent/return on generated stores, reported in JMH's layout.
+final class Benchmark {
+    private Benchmark() {}
+
+    private static final int BENCH_LOOKUPS = 100_000, BENCH_CYCLES = 10_000;
+    private static volatile Object benchSink;
+
+    static void run(int[] sizes, String filter) throws Exception {
+        System.out.printf(Locale.ROOT, "%-14s %9s %4s %14s %12s  %s%n", "Benchmark", "rentals", "Cnt", "Score", "Stdev", "Units");
+        for (int size : sizes) {
+            BikeRentalSystem.DataStore data = BikeRentalTools.sampleData(size, 42);
+            Path dir = Files.createTempDirectory("bikerental-bench");
+            Path out = dir.resolve("out.txt");
+            BikeRentalSystem.writeBikes(dir.resolve(BikeRentalSystem.BIKES_FILE), data);
+            BikeRentalSystem.writeCustomers(dir.resolve(BikeRentalSystem.CUSTOMERS_FILE), data);
+            BikeRentalSystem.writeRentals(dir.resolve(BikeRentalSystem.RENTALS_FILE), data);
+            try {
+                measure(filter, "loadBikes", size, "ms/op", 1, null, () -> { BikeRentalSystem.DataStore s = new BikeRentalSystem.DataStore(); BikeRentalSystem.loadBikes(dir.resolve(BikeRentalSystem.BIKES_FILE), s); return s; });
+                measure(filter, "loadCustomers", size, "ms/op", 1, null, () -> { BikeRentalSystem.DataStore s = new BikeRentalSystem.DataStore(); BikeRentalSystem.loadCustomers(dir.resolve(BikeRentalSystem.CUSTOMERS_FILE), s); return s; });
+                measure(filter, "loadRentals", size, "ms/op", 1, null, () -> { BikeRentalSystem.DataStore s = new BikeRentalSystem.DataStore(); BikeRentalSystem.loadRentals(dir.resolve(BikeRentalSystem.RENTALS_FILE), s); return s; });
+                measure(filter, "writeBikes", size, "ms/op", 1, null, () -> { BikeRentalSystem.writeBikes(out, data); return out; });
+                measure(filter, "writeCustomers", size, "ms/op", 1, null, () -> { BikeRentalSystem.writeCustomers(out, data); return out; });
+                measure(filter, "writeRentals", size, "ms/op", 1, null, () -> { BikeRentalSystem.writeRentals(out, data); return out; });
+
+                Random rnd = new Random(size);
+                List<BikeRentalSystem.Bike> bikes = data.bikes();
+                List<BikeRentalSystem.Customer> customers = data.customers();
+                List<BikeRentalSystem.Rental> rentals = data.rentals();
+                String[] bikeIds = new String[1024], licenses = new String[1024], rentalIds = new String[1024];
+                for (int i = 0; i < 1024; i++) {
+                    bikeIds[i] = bikes.get(rnd.nextInt(bikes.size())).getBikeId();
+                    licenses[i] = customers.get(rnd.nextInt(customers.size())).getLicense();
+                    rentalIds[i] = rentals.get(rnd.nextInt(rentals.size())).rentalId();
+                }
+                measure(filter, "findBike", size, "ns/op", BENCH_LOOKUPS, null, () -> {
+                    int hits = 0;
+                    for (int i = 0; i < BENCH_LOOKUPS; i++) if (data.findBike(bikeIds[i & 1023]) != null) hits++;
+                    return hits;
+                });
+                measure(filter, "findCustomer", size, "ns/op", BENCH_LOOKUPS, null, () -> {
+                    int hits = 0;
+                    for (int i = 0; i < BENCH_LOOKUPS; i++) if (data.findCustomer(licenses[i & 1023]) != null) hits++;
+                    return hits;
+                });
+                String[] prefixes = new String[1024];
+                for (int i = 0; i < 1024; i++) {
+                    BikeRentalSystem.Customer c = customers.get(rnd.nextInt(customers.size()));
+                    prefixes[i] = i % 2 == 0 ? c.getLicense().substring(0, 8) : c.getName().substring(0, c.getName().length() - 1);
+                }
+                data.indexCustomers();
+                measure(filter, "searchCustomers", size, "ns/op", BENCH_LOOKUPS, null, () -> {
+                    int hits = 0;
+                    for (int i = 0; i < BENCH_LOOKUPS; i++) hits += data.searchCustomers(prefixes[i & 1023], 8).size();
+                    return hits;
+                });
+                measure(filter, "findRental", size, "ns/op", BENCH_LOOKUPS, null, () -> {
+                    int hits = 0;
+                    for (int i = 0; i < BENCH_LOOKUPS; i++) if (data.findRental(rentalIds[i & 1023]) != null) hits++;
+                    return hits;
+                });
+
+                BikeRentalSystem.RentalEngine engine = new BikeRentalSystem.RentalEngine(data, new BikeRentalSystem.SimplePolicy());
+                engine.resetSequences();
+                List<String> free = new ArrayList<>();
+                for (BikeRentalSystem.Bike b : bikes) if (b.isAvailable()) free.add(b.getBikeId());
+                // Each call starts from the generated rentals again, so the size column stays true.
+                Runnable trim = () -> {
+                    BikeRentalSystem.RentalColumns columns = data.rentalColumns();
+                    if (columns.size() <= size) return;
+                    BitSet added = new BitSet(columns.size());
+                    added.set(size, columns.size());
+                    data.removeRentals(columns, added);
+                };
+                measure(filter, "rentReturn", size, "us/op", BENCH_CYCLES, trim, () -> {
+                    BikeRentalSystem.Rental r = null;
+                    for (int i = 0; i < BENCH_CYCLES; i++) {
+                        r = engine.rent(licenses[i & 1023], free.get(i % free.size()), 1 + i % 7);
+                        engine.returnBike(r.rentalId(), "No Damage");
+                    }
+                    return r;
+                });
+                trim.run();
+
+                int today = BikeRentalSystem.today();
+                for (int i = 0; i < bikes.size() * 10; i++) {
+                    data.addReservation(new BikeRentalSystem.Reservation("V" + (i + 1), bikes.get(rnd.nextInt(bikes.size())).getBikeId(),
+                            customers.get(rnd.nextInt(customers.size())).getId(), today + 1 + rnd.nextInt(365), 1 + rnd.nextInt(7)), false);
+                }
+                int[] starts = new int[1024];
+                for (int i = 0; i < 1024; i++) starts[i] = today + 1 + rnd.nextInt(365);
+                measure(filter, "freeBikes", size, "us/op", BENCH_CYCLES, null, () -> {
+                    int found = 0;
+                    for (int i = 0; i < BENCH_CYCLES; i++) found += data.freeBikes(starts[i & 1023], starts[i & 1023] + 3).size();
+                    return found;
+                });
+            } finally {
+                for (String f : new String[]{BikeRentalSystem.BIKES_FILE, BikeRentalSystem.CUSTOMERS_FILE, BikeRentalSystem.RENTALS_FILE, "out.txt"}) Files.deleteIfExists(dir.resolve(f));
+                Files.deleteIfExists(dir);
+            }
+        }
+    }
+
+    // reset, when given, runs untimed before every call.
+    private static void measure(String filter, String name, int size, String unit, int opsPerCall, Runnable reset,
+                                java.util.concurrent.Callable<Object> body) throws Exception {
+        if (filter != null && !name.contains(filter)) return;
+        long warmupNanos = Long.getLong("bikerental.bench.warmupMs", 2000) * 1_000_000L;
+        long iterationNanos = Long.getLong("bikerental.bench.iterationMs", 1000) * 1_000_000L;
+        int iterations = Integer.getInteger("bikerental.bench.iterations", 5);
+        double unitNanos = unit.startsWith("ms") ? 1e6 : unit.startsWith("us") ? 1e3 : 1;
+        System.gc();
+        long start = System.nanoTime();
+        do {
+            if (reset != null) reset.run();
+            benchSink = body.call();
+        } while (System.nanoTime() - start < warmupNanos);
+        double[] scores = new double[iterations];
+        double mean = 0;
+        for (int it = 0; it < iterations; it++) {
+            long calls = 0, elapsed = 0;
+            do {
+                if (reset != null) reset.run();
+                long t0 = System.nanoTime();
+                benchSink = body.call();
+                elapsed += System.nanoTime() - t0;
+                calls++;
+            } while (elapsed < iterationNanos);
+            scores[it] = elapsed / (double) calls / opsPerCall / unitNanos;
+            mean += scores[it] / iterations;
+        }
+        double variance = 0;
+        for (double s : scores) variance += (s - mean) * (s - mean) / Math.max(1, iterations - 1);
+        System.out.printf(Locale.ROOT, "%-14s %9d %4d %14.3f %12.3f  %s%n", name, size, iterations, mean, Math.sqrt(variance), unit);
+    }
+}
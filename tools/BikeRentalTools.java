@@ -0,0 +1,99 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+
+// Checks, benchmarks and simulations for the rental core, kept out of the application. Build them next to it with
+// javac -d out BikeRentalSystem.java tools/*.java, then run java -cp out BikeRentalTools --stress 8 50000 and so on.
+final class BikeRentalTools {
+    private BikeRentalTools() {}
+
+    public static void main(String[] args) throws Exception {
+        BikeRentalSystem.Metrics.install();
+        switch (args.length > 0 ? args[0] : "") {
+            case "--compare-startup":
+                StorageComparison.compareStartup(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+                break;
+            case "--compare-storage":
+                StorageComparison.compareStorage(args.length > 1 ? Integer.parseInt(args[1]) : 20_000, args.length > 2 ? Integer.parseInt(args[2]) : 100_000);
+                break;
+            case "--simulate": {
+                String[] damage = (args.length > 4 ? args[4] : "70,20,8,2").split(",");
+                double[] percent = new double[damage.length];
+                for (int i = 0; i < damage.length; i++) percent[i] = Double.parseDouble(damage[i].trim());
+                Simulator.simulate(new Simulator.Arrivals(args.length > 1 ? Integer.parseInt(args[1]) : 180, args.length > 2 ? Integer.parseInt(args[2]) : 200,
+                        args.length > 3 ? Double.parseDouble(args[3]) : 150, percent), Long.getLong("bikerental.sim.seed", 1L));
+                break;
+            }
+            case "--replay":
+                if (args.length < 2) throw new IllegalArgumentException("--replay needs a rentals.txt file");
+                Simulator.simulate(new Simulator.Replay(Paths.get(args[1])), Long.getLong("bikerental.sim.seed", 1L));
+                break;
+            case "--loadtest":
+                LoadTest.run(args.length > 1 ? Integer.parseInt(args[1]) : 1000, args.length > 2 ? Integer.parseInt(args[2]) : 50);
+                break;
+            case "--paint-bench":
+                PaintBenchmark.run(args.length > 1 ? Integer.parseInt(args[1]) : 500);
+                break;
+            case "--stress":
+                if (!StressTest.run(args.length > 1 ? Integer.parseInt(args[1]) : 8,
+                        args.length > 2 ? Integer.parseInt(args[2]) : 50_000)) System.exit(1);
+                break;
+            case "--heap-report":
+                HeapReport.run(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+                break;
+            case "--bench": {
+                String[] sizes = (args.length > 1 ? args[1] : "1000,100000,1000000").split(",");
+                int[] counts = new int[sizes.length];
+                for (int i = 0; i < sizes.length; i++) counts[i] = Integer.parseInt(sizes[i].trim());
+                Benchmark.run(counts, args.length > 2 ? args[2] : null);
+                break;
+            }
+            default:
+                System.err.println("Usage: java BikeRentalTools [--compare-startup RENTALS | --compare-storage CYCLES [RENTALS] | --stress THREADS OPS"
+                        + " | --loadtest CLIENTS REQUESTS | --paint-bench FRAMES | --bench SIZES [NAME]"
+                        + " | --heap-report RENTALS | --simulate DAYS BIKES RENTALS_PER_DAY [DAMAGE%]"
+                        + " | --replay RENTALS_FILE]");
+        }
+    }
+
+    static BikeRentalSystem.DataStore sampleData(int rentalCount, long seed) {
+        Random rnd = new Random(seed);
+        String[] models = {"Royal Enfield Classic 350", "Pulsar 180", "Apache RTR", "Himalayan 411", "Duke 200"};
+        BikeRentalSystem.DataStore data = new BikeRentalSystem.DataStore();
+        int bikeCount = Math.max(3, Math.min(2000, rentalCount / 50));
+        BikeRentalSystem.Bike[] fleet = new BikeRentalSystem.Bike[bikeCount];
+        for (int i = 0; i < bikeCount; i++) {
+            fleet[i] = new BikeRentalSystem.Bike("B" + (101 + i), models[i % models.length], 500 + 50 * (i % 10));
+            data.addBike(fleet[i]);
+        }
+        int custCount = Math.max(1, rentalCount / 10);
+        for (int i = 0; i < custCount; i++) {
+            data.addCustomer(new BikeRentalSystem.Customer("C" + (i + 1), "Customer " + (i + 1), 18 + rnd.nextInt(50), "JK01" + (10000000 + i)));
+        }
+        long firstDay = LocalDate.now().minusYears(3).toEpochDay();
+        for (int i = 0; i < rentalCount; i++) {
+            BikeRentalSystem.Bike b = fleet[rnd.nextInt(bikeCount)];
+            int days = 1 + rnd.nextInt(7);
+            String customerId = "C" + (1 + rnd.nextInt(custCount));
+            int cost = b.getRate() * days, start = (int) (firstDay + (long) i * 1000 / Math.max(1, rentalCount));
+            if (i < rentalCount - bikeCount / 2) {
+                int damageFee = new int[]{0, 0, 0, 200, 500, 1000}[rnd.nextInt(6)];
+                data.addRental("R" + (i + 1), b.getBikeId(), customerId, days, cost, damageFee, cost + damageFee, true, start, start + days);
+            } else {
+                b.setAvailable(false);
+                data.addRental("R" + (i + 1), b.getBikeId(), customerId, days, cost, 0, cost, false, start, BikeRentalSystem.RentalColumns.NO_DATE);
+            }
+        }
+        return data;
+    }
+
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try { Thread.sleep(50); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,27 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// --heap-report: heap taken by rentals loaded from text.
+final class HeapReport {
+    private HeapReport() {}
+
+    static void run(int rentalCount) throws IOException {
+        Path dir = Files.createTempDirectory("bikerental-heap");
+        BikeRentalSystem.DataStore data = BikeRentalTools.sampleData(rentalCount, 42);
+        BikeRentalSystem.writeBikes(dir.resolve(BikeRentalSystem.BIKES_FILE), data);
+        BikeRentalSystem.writeCustomers(dir.resolve(BikeRentalSystem.CUSTOMERS_FILE), data);
+        BikeRentalSystem.writeRentals(dir.resolve(BikeRentalSystem.RENTALS_FILE), data);
+        data = null;
+        BikeRentalSystem.DataStore loaded = new BikeRentalSystem.DataStore();
+        BikeRentalSystem.loadBikes(dir.resolve(BikeRentalSystem.BIKES_FILE), loaded);
+        BikeRentalSystem.loadCustomers(dir.resolve(BikeRentalSystem.CUSTOMERS_FILE), loaded);
+        long before = BikeRentalTools.usedHeap();
+        BikeRentalSystem.loadRentals(dir.resolve(BikeRentalSystem.RENTALS_FILE), loaded);
+        long rentals = BikeRentalTools.usedHeap() - before;
+        System.out.printf(Locale.ROOT, "%,d rentals loaded from text: %,d bytes of heap, %.1f MB per million rentals (%.1f bytes each)%n",
+                loaded.rentalCount(), rentals, rentals / 1e6 * 1_000_000 / Math.max(1, rentalCount), rentals / (double) Math.max(1, rentalCount));
+        for (String f : new String[]{BikeRentalSystem.BIKES_FILE, BikeRentalSystem.CUSTOMERS_FILE, BikeRentalSystem.RENTALS_FILE}) Files.deleteIfExists(dir.resolve(f));
+        Files.deleteIfExists(dir);
+    }
+}
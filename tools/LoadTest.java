@@ -0,0 +1,101 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// --loadtest: the booking API on generated data under many concurrent HTTP clients.
+final class LoadTest {
+    private LoadTest() {}
+
+    static void run(int clients, int requestsPerClient) throws IOException {
+        System.setProperty("http.maxConnections", String.valueOf(clients));
+        BikeRentalSystem.DataStore data = BikeRentalTools.sampleData(10_000, 7);
+        List<BikeRentalSystem.Customer> customers = data.customers();
+        List<BikeRentalSystem.Bike> bikes = data.bikes();
+        BikeRentalSystem.RentalEngine engine = new BikeRentalSystem.RentalEngine(data, new BikeRentalSystem.SimplePolicy());
+        BikeRentalSystem.BookingServer server = new BikeRentalSystem.BookingServer(engine, 0);
+        server.start();
+        String base = "http://localhost:" + server.port();
+        java.util.concurrent.ExecutorService pool = BikeRentalSystem.BookingServer.requestExecutor();
+        long[][] latencies = new long[clients][];
+        java.util.concurrent.atomic.AtomicInteger failures = new java.util.concurrent.atomic.AtomicInteger();
+        java.util.concurrent.atomic.AtomicInteger[] byOp = new java.util.concurrent.atomic.AtomicInteger[4];
+        for (int i = 0; i < byOp.length; i++) byOp[i] = new java.util.concurrent.atomic.AtomicInteger();
+        java.util.concurrent.CountDownLatch done = new java.util.concurrent.CountDownLatch(clients);
+        long t0 = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            final int client = c;
+            pool.execute(() -> {
+                Random rnd = new Random(client);
+                long[] lat = new long[requestsPerClient];
+                Deque<String> held = new ArrayDeque<>();
+                try {
+                    for (int i = 0; i < requestsPerClient; i++) {
+                        int roll = rnd.nextInt(100), op;
+                        String method = "GET", path;
+                        if (roll < 40) {
+                            op = 0; path = "/bikes?available=true";
+                        } else if (roll < 65) {
+                            op = 1; path = "/customers?license=" + customers.get(rnd.nextInt(customers.size())).getLicense();
+                        } else if (held.isEmpty() || roll < 80) {
+                            op = 2; method = "POST";
+                            path = "/rent?license=" + customers.get(rnd.nextInt(customers.size())).getLicense()
+                                    + "&bike=" + bikes.get(rnd.nextInt(bikes.size())).getBikeId() + "&days=" + (1 + rnd.nextInt(5));
+                        } else {
+                            op = 3; method = "POST"; path = "/return?rental=" + held.pop() + "&damage=No%20Damage";
+                        }
+                        long start = System.nanoTime();
+                        String[] response = httpCall(method, base + path);
+                        lat[i] = System.nanoTime() - start;
+                        byOp[op].incrementAndGet();
+                        int status = Integer.parseInt(response[0]);
+                        if (status != 200 && status != 409) failures.incrementAndGet();
+                        if (op == 2 && status == 200) {
+                            int at = response[1].indexOf("\"id\":\"") + 6;
+                            held.push(response[1].substring(at, response[1].indexOf('"', at)));
+                        }
+                    }
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                } finally {
+                    latencies[client] = lat;
+                    done.countDown();
+                }
+            });
+        }
+        try { done.await(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        long elapsed = System.nanoTime() - t0;
+        pool.shutdown();
+        server.stop();
+        long[] all = new long[clients * requestsPerClient];
+        int n = 0;
+        for (long[] lat : latencies) for (long v : lat) if (v > 0) all[n++] = v;
+        all = Arrays.copyOf(all, n);
+        Arrays.sort(all);
+        System.out.printf(Locale.ROOT, "%,d clients x %d requests (%s): %,d requests in %.2f s -> %,.0f req/s%n",
+                clients, requestsPerClient, BikeRentalSystem.BookingServer.executorKind(), n, elapsed / 1e9, n / (elapsed / 1e9));
+        System.out.printf(Locale.ROOT, "latency p50 %.2f ms, p99 %.2f ms, max %.2f ms; failures %d%n",
+                percentile(all, 50) / 1e6, percentile(all, 99) / 1e6, (n == 0 ? 0 : all[n - 1]) / 1e6, failures.get());
+        System.out.printf(Locale.ROOT, "mix: bikes %,d, customer lookups %,d, rents %,d, returns %,d%n",
+                byOp[0].get(), byOp[1].get(), byOp[2].get(), byOp[3].get());
+    }
+
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p / 100 * sorted.length) - 1)];
+    }
+
+    static String[] httpCall(String method, String url) throws IOException {
+        java.net.HttpURLConnection con = (java.net.HttpURLConnection) new java.net.URL(url).openConnection();
+        con.setRequestMethod(method);
+        int status = con.getResponseCode();
+        InputStream in = status < 400 ? con.getInputStream() : con.getErrorStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (in != null) {
+            try (InputStream is = in) {
+                byte[] buf = new byte[8192];
+                for (int len; (len = is.read(buf)) > 0; ) body.write(buf, 0, len);
+            }
+        }
+        return new String[]{String.valueOf(status), body.toString("UTF-8")};
+    }
+}
@@ -0,0 +1,50 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+
+// --paint-bench: paint time and allocation per frame for the custom-painted components, with and without RenderCache.
+final class PaintBenchmark {
+    private PaintBenchmark() {}
+
+    static void run(int frames) {
+        BikeRentalSystem.ShawlWatermarkPanel background = new BikeRentalSystem.ShawlWatermarkPanel();
+        background.setSize(820, 560);
+        BikeRentalSystem.MountainsBannerPanel banner = new BikeRentalSystem.MountainsBannerPanel();
+        banner.setSize(796, 140);
+        BikeRentalSystem.BikeIcon icon = new BikeRentalSystem.BikeIcon(24, 24);
+        BikeRentalSystem.RoundedButton[] buttons = new BikeRentalSystem.RoundedButton[5];
+        for (int i = 0; i < buttons.length; i++) {
+            buttons[i] = new BikeRentalSystem.RoundedButton("Button " + i, icon);
+            buttons[i].setSize(240, 64);
+        }
+        BufferedImage frame = new BufferedImage(820, 560, BufferedImage.TYPE_INT_ARGB_PRE);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (boolean cached : new boolean[]{false, true}) {
+            BikeRentalSystem.RenderCache.enabled = cached;
+            long nanos = 0, bytes = 0;
+            for (int i = -200; i < frames; i++) {
+                long b0 = mx.getThreadAllocatedBytes(thread), t0 = System.nanoTime();
+                Graphics2D g = frame.createGraphics();
+                background.paintComponent(g);
+                banner.paintComponent(g);
+                for (int k = 0; k < buttons.length; k++) {
+                    buttons[k].hover = (i + k) % 2 == 0;
+                    Graphics2D bg = (Graphics2D) g.create(12 + (k % 3) * 252, 160 + (k / 3) * 76, 240, 64);
+                    buttons[k].paintComponent(bg);
+                    bg.dispose();
+                }
+                g.dispose();
+                if (i >= 0) {
+                    nanos += System.nanoTime() - t0;
+                    bytes += mx.getThreadAllocatedBytes(thread) - b0;
+                }
+            }
+            System.out.printf(Locale.ROOT, "%-9s %8.3f ms/frame %,12d bytes allocated/frame%n",
+                    cached ? "cached" : "uncached", nanos / 1e6 / frames, bytes / frames);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+
+// Runs the rental rules through simulated days on a scratch copy of the file persistence (text files, journal,
+// writer, archive) and prints a line per simulated month, so growth in latency, heap or file sizes shows up
+// before a real season does. The workload is either random arrivals or a replayed rentals.txt.
+final class Simulator {
+    static final String[] DAMAGE_LEVELS = {"No Damage", "Minor Scratch", "Moderate Damage", "Heavy Damage"};
+
+    interface Workload {
+        int firstDay();
+        int lastDay();
+        void setUp(Simulator sim) throws BikeRentalSystem.InvalidLicenseException;
+        void day(int day, Simulator sim) throws BikeRentalSystem.InvalidLicenseException;
+    }
+
+    private static final class Due {
+        final int day;
+        final String rentalId, damage;
+        Due(int day, String rentalId, String damage) { this.day = day; this.rentalId = rentalId; this.damage = damage; }
+    }
+
+    final BikeRentalSystem.DataStore store = new BikeRentalSystem.DataStore();
+    final BikeRentalSystem.RentalEngine engine = new BikeRentalSystem.RentalEngine(store, new BikeRentalSystem.SimplePolicy());
+    final Random random;
+    private final Path dir;
+    private final BikeRentalSystem.PersistenceWriter writer;
+    private final BikeRentalSystem.RentalAnalytics analytics = new BikeRentalSystem.RentalAnalytics();
+    private final BikeRentalSystem.OverdueScheduler overdue = new BikeRentalSystem.OverdueScheduler(() -> {});
+    private final PriorityQueue<Due> due = new PriorityQueue<>(Comparator.comparingInt((Due d) -> d.day));
+    private final List<String> free = new ArrayList<>();
+    private final Map<String, Integer> freeAt = new HashMap<>();
+    private long[] latencies = new long[1 << 16];
+    private int samples;
+    private long ops, rejected, turnedAway;
+
+    Simulator(Path dir, long seed) {
+        this.dir = dir;
+        random = new Random(seed);
+        BikeRentalSystem.Storage storage = new BikeRentalSystem.FlatFileStorage(dir, true);
+        BikeRentalSystem.RentalArchive archive = BikeRentalSystem.openArchive(dir);
+        writer = BikeRentalSystem.newWriter(storage, store, BikeRentalSystem.openJournal(dir, storage), archive, null, () -> {});
+        engine.addListener(writer);
+        engine.addListener(analytics);
+        engine.addListener(overdue);
+    }
+
+    void addBike(BikeRentalSystem.Bike b) {
+        store.addBike(b);
+        release(b.getBikeId());
+    }
+
+    BikeRentalSystem.Customer register(String name, int age, String license) throws BikeRentalSystem.InvalidLicenseException {
+        long t0 = System.nanoTime();
+        try {
+            return engine.register(name, age, license);
+        } finally {
+            sample(t0);
+        }
+    }
+
+    // A random free bike, or null when every bike is out.
+    String takeFreeBike() {
+        if (free.isEmpty()) return null;
+        String id = free.get(random.nextInt(free.size()));
+        claim(id);
+        return id;
+    }
+
+    // Rents the bike and queues its return for returnDay with the given damage level.
+    boolean rent(String license, String bikeId, int days, int returnDay, String damage) {
+        claim(bikeId);
+        long t0 = System.nanoTime();
+        try {
+            BikeRentalSystem.Rental r = engine.rent(license, bikeId, days);
+            sample(t0);
+            due.add(new Due(Math.max(returnDay, BikeRentalSystem.today()), r.rentalId(), damage));
+            return true;
+        } catch (BikeRentalSystem.RentalException e) {
+            sample(t0);
+            rejected++;
+            BikeRentalSystem.Bike b = store.findBike(bikeId);
+            if (b != null && b.isAvailable()) release(bikeId);
+            return false;
+        }
+    }
+
+    void turnedAway() { turnedAway++; }
+
+    void run(Workload workload, PrintStream out) throws IOException, BikeRentalSystem.InvalidLicenseException {
+        java.time.Clock realClock = BikeRentalSystem.clock;
+        java.time.ZoneId zone = realClock.getZone();
+        try {
+            int first = workload.firstDay(), last = workload.lastDay();
+            BikeRentalSystem.clock = java.time.Clock.fixed(LocalDate.ofEpochDay(first).atTime(9, 0).atZone(zone).toInstant(), zone);
+            workload.setUp(this);
+            writer.markDirty(BikeRentalSystem.PersistenceWriter.Dirty.values());
+            writer.start();
+            out.printf(Locale.ROOT, "Simulating %s to %s in %s%n", LocalDate.ofEpochDay(first), LocalDate.ofEpochDay(last), dir);
+            out.printf(Locale.ROOT, "%-10s %9s %9s %8s %8s %8s %7s %9s %8s %11s %10s %10s %10s%n", "date", "ops", "ops/s",
+                    "p50 us", "p99 us", "max us", "heap MB", "rentals", "overdue", "rentals.txt", "journal", "snapshot", "archive");
+            long startNanos = System.nanoTime(), monthNanos = startNanos, monthOps = 0;
+            for (int day = first; day <= last; day++) {
+                BikeRentalSystem.clock = java.time.Clock.fixed(LocalDate.ofEpochDay(day).atTime(9, 0).atZone(zone).toInstant(), zone);
+                while (!due.isEmpty() && due.peek().day <= day) {
+                    Due d = due.poll();
+                    long t0 = System.nanoTime();
+                    try {
+                        BikeRentalSystem.Rental r = engine.returnBike(d.rentalId, d.damage);
+                        release(r.bikeId());
+                    } catch (BikeRentalSystem.RentalException e) {
+                        rejected++;
+                    }
+                    sample(t0);
+                }
+                workload.day(day, this);
+                overdue.check();
+                if ((day - first) % 30 == 29 || day == last) {
+                    long now = System.nanoTime();
+                    report(out, day, ops - monthOps, now - monthNanos);
+                    monthOps = ops;
+                    monthNanos = System.nanoTime();
+                }
+            }
+            long elapsed = System.nanoTime() - startNanos;
+            long t0 = System.nanoTime();
+            writer.close(600_000);
+            out.printf(Locale.ROOT, "%,d days, %,d operations in %.1f s (%,.0f ops/s); %,d rejected, %,d turned away with no free bike;"
+                            + " final save %d ms%s%n", last - first + 1, ops, elapsed / 1e9, ops / (elapsed / 1e9), rejected, turnedAway,
+                    (System.nanoTime() - t0) / 1_000_000, writer.lastFailure() == null ? "" : "; save failed: " + writer.lastFailure().getMessage());
+            BikeRentalSystem.RentalAnalytics.Report totals = analytics.report();
+            out.printf(Locale.ROOT, "revenue ₹%,d from %,d returns, damage fees ₹%,d; %,d rentals still out%n",
+                    totals.revenue, totals.returns, totals.damageFees, totals.ongoing.size());
+        } finally {
+            BikeRentalSystem.clock = realClock;
+        }
+    }
+
+    private void report(PrintStream out, int day, long monthOps, long nanos) {
+        Arrays.sort(latencies, 0, samples);
+        long p50 = samples == 0 ? 0 : latencies[samples / 2], p99 = samples == 0 ? 0 : latencies[samples * 99 / 100];
+        long max = samples == 0 ? 0 : latencies[samples - 1];
+        samples = 0;
+        out.printf(Locale.ROOT, "%-10s %,9d %,9.0f %8.1f %8.1f %8.1f %7.1f %,9d %,8d %,11d %,10d %,10d %,10d%n",
+                LocalDate.ofEpochDay(day), monthOps, monthOps / Math.max(1e-9, nanos / 1e9), p50 / 1e3, p99 / 1e3, max / 1e3,
+                BikeRentalTools.usedHeap() / 1e6, store.rentalCount(), overdue.overdueCount(), size(dir.resolve(BikeRentalSystem.RENTALS_FILE)),
+                size(dir.resolve(BikeRentalSystem.JOURNAL_FILE)), size(dir.resolve(BikeRentalSystem.SNAPSHOT_FILE)), size(dir.resolve(BikeRentalSystem.ARCHIVE_DIR)));
+    }
+
+    private static long size(Path p) {
+        if (!Files.exists(p)) return 0;
+        try (java.util.stream.Stream<Path> files = Files.walk(p)) {
+            return files.filter(Files::isRegularFile).mapToLong(f -> f.toFile().length()).sum();
+        } catch (IOException | UncheckedIOException e) {
+            return -1;
+        }
+    }
+
+    private void sample(long t0) {
+        if (samples == latencies.length) latencies = Arrays.copyOf(latencies, samples * 2);
+        latencies[samples++] = System.nanoTime() - t0;
+        ops++;
+    }
+
+    private void claim(String bikeId) {
+        Integer i = freeAt.remove(bikeId);
+        if (i == null) return;
+        String last = free.remove(free.size() - 1);
+        if (i < free.size()) {
+            free.set(i, last);
+            freeAt.put(last, i);
+        }
+    }
+
+    private void release(String bikeId) {
+        if (freeAt.containsKey(bikeId)) return;
+        freeAt.put(bikeId, free.size());
+        free.add(bikeId);
+    }
+
+    // Customers arrive at random through the day: rentals per day and registrations (a tenth as many) are
+    // Poisson distributed, each rental lasts 1-7 days, one in ten comes back 1-4 days late, and the damage
+    // level follows the given percentages.
+    static final class Arrivals implements Workload {
+        private final int first, days, bikes;
+        private final double perDay;
+        private final double[] damage;
+        private final List<String> licenses = new ArrayList<>();
+
+        Arrivals(int days, int bikes, double perDay, double[] damagePercent) {
+            this.first = BikeRentalSystem.today() - days + 1;
+            this.days = days;
+            this.bikes = bikes;
+            this.perDay = perDay;
+            double total = 0;
+            for (double d : damagePercent) total += d;
+            damage = new double[damagePercent.length];
+            double sum = 0;
+            for (int i = 0; i < damage.length; i++) damage[i] = (sum += damagePercent[i]) / total;
+        }
+
+        @Override public int firstDay() { return first; }
+        @Override public int lastDay() { return first + days - 1; }
+
+        @Override public void setUp(Simulator sim) throws BikeRentalSystem.InvalidLicenseException {
+            String[] models = {"Royal Enfield Classic 350", "Pulsar 180", "Apache RTR", "Himalayan 411", "Duke 200"};
+            for (int i = 0; i < bikes; i++) sim.addBike(new BikeRentalSystem.Bike("S" + (101 + i), models[i % models.length], 500 + 50 * (i % 10)));
+            for (int i = 0; i < Math.max(10, perDay * 2); i++) newCustomer(sim);
+        }
+
+        @Override public void day(int day, Simulator sim) throws BikeRentalSystem.InvalidLicenseException {
+            for (int i = poisson(sim.random, perDay / 10); i > 0; i--) newCustomer(sim);
+            for (int i = poisson(sim.random, perDay); i > 0; i--) {
+                String bike = sim.takeFreeBike();
+                if (bike == null) { sim.turnedAway(); continue; }
+                int length = 1 + sim.random.nextInt(7), late = sim.random.nextInt(10) == 0 ? 1 + sim.random.nextInt(4) : 0;
+                sim.rent(licenses.get(sim.random.nextInt(licenses.size())), bike, length, day + length + late, damage(sim.random));
+            }
+        }
+
+        private void newCustomer(Simulator sim) throws BikeRentalSystem.InvalidLicenseException {
+            String license = "JK01" + (10000000 + licenses.size());
+            sim.register("Customer " + (licenses.size() + 1), 18 + sim.random.nextInt(50), license);
+            licenses.add(license);
+        }
+
+        private String damage(Random rnd) {
+            double x = rnd.nextDouble();
+            for (int i = 0; i < damage.length; i++) if (x < damage[i]) return DAMAGE_LEVELS[Math.min(i, DAMAGE_LEVELS.length - 1)];
+            return DAMAGE_LEVELS[0];
+        }
+
+        private static int poisson(Random rnd, double mean) {
+            if (mean < 30) {
+                double limit = Math.exp(-mean), p = rnd.nextDouble();
+                int k = 0;
+                while (p > limit) { p *= rnd.nextDouble(); k++; }
+                return k;
+            }
+            return (int) Math.max(0, Math.round(mean + Math.sqrt(mean) * rnd.nextGaussian()));
+        }
+    }
+
+    // Replays a rentals.txt: each rental is rented on its start date and returned on its return date with the
+    // damage level matching its damage fee. Bikes and customers are created from the IDs it mentions.
+    static final class Replay implements Workload {
+        private final TreeMap<Integer, List<String[]>> byStart = new TreeMap<>();
+        private final Map<String, Integer> rates = new LinkedHashMap<>();
+        private final Map<String, String> licenses = new LinkedHashMap<>();
+        private int last = Integer.MIN_VALUE;
+
+        Replay(Path trace) throws IOException {
+            try (BufferedReader br = Files.newBufferedReader(trace)) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.trim().isEmpty() || line.startsWith("#")) continue;
+                    String[] parts = line.split("\\|", -1);
+                    if (parts.length < 10) continue;
+                    int start = BikeRentalSystem.RentalColumns.parseDay(parts[8]);
+                    if (start <= BikeRentalSystem.RentalColumns.NO_DATE) continue;
+                    int days = Math.max(1, Integer.parseInt(parts[3]));
+                    rates.putIfAbsent(parts[1], Integer.parseInt(parts[4]) / days);
+                    licenses.putIfAbsent(parts[2], "");
+                    byStart.computeIfAbsent(start, k -> new ArrayList<>()).add(parts);
+                    int end = Boolean.parseBoolean(parts[7]) ? BikeRentalSystem.RentalColumns.parseDay(parts[9]) : BikeRentalSystem.RentalColumns.NO_DATE;
+                    last = Math.max(last, Math.max(start, end));
+                }
+            }
+            if (byStart.isEmpty()) throw new IOException("No dated rentals in " + trace);
+        }
+
+        @Override public int firstDay() { return byStart.firstKey(); }
+        @Override public int lastDay() { return last; }
+
+        @Override public void setUp(Simulator sim) throws BikeRentalSystem.InvalidLicenseException {
+            rates.forEach((id, rate) -> sim.addBike(new BikeRentalSystem.Bike(id, "Replayed", Math.max(1, rate))));
+            int n = 0;
+            for (Map.Entry<String, String> c : licenses.entrySet()) {
+                String license = "TR" + (10000000 + n++);
+                sim.register("Customer " + c.getKey(), 30, license);
+                c.setValue(license);
+            }
+        }
+
+        @Override public void day(int day, Simulator sim) {
+            List<String[]> starting = byStart.remove(day);
+            if (starting == null) return;
+            for (String[] r : starting) {
+                boolean returned = Boolean.parseBoolean(r[7]);
+                int end = returned ? BikeRentalSystem.RentalColumns.parseDay(r[9]) : Integer.MAX_VALUE;
+                sim.rent(licenses.get(r[2]), r[1], Math.max(1, Integer.parseInt(r[3])), end <= BikeRentalSystem.RentalColumns.NO_DATE ? day : end,
+                        damageLevel(Integer.parseInt(r[5])));
+            }
+        }
+
+        private static String damageLevel(int fee) {
+            BikeRentalSystem.SimplePolicy policy = new BikeRentalSystem.SimplePolicy();
+            String best = DAMAGE_LEVELS[0];
+            for (String level : DAMAGE_LEVELS) {
+                if (Math.abs(policy.damageFee(level) - fee) < Math.abs(policy.damageFee(best) - fee)) best = level;
+            }
+            return best;
+        }
+    }
+
+    // --simulate DAYS BIKES RENTALS_PER_DAY [DAMAGE%] or --replay FILE; -Dbikerental.sim.dir keeps the files.
+    static void simulate(Simulator.Workload workload, long seed) throws IOException {
+        String keep = System.getProperty("bikerental.sim.dir", "");
+        Path dir = keep.isEmpty() ? Files.createTempDirectory("bikerental-sim") : Files.createDirectories(Paths.get(keep));
+        try {
+            new Simulator(dir, seed).run(workload, System.out);
+        } catch (BikeRentalSystem.InvalidLicenseException e) {
+            throw new IOException(e);
+        } finally {
+            if (keep.isEmpty()) {
+                try (java.util.stream.Stream<Path> files = Files.walk(dir)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// --compare-startup and --compare-storage: the loaders and the storage backends side by side.
+final class StorageComparison {
+    private StorageComparison() {}
+
+    static void compareStartup(int rentalCount) throws IOException {
+        Path dir = Files.createTempDirectory("bikerental-startup");
+        BikeRentalSystem.DataStore data = BikeRentalTools.sampleData(rentalCount, 42);
+        BikeRentalSystem.writeBikes(dir.resolve(BikeRentalSystem.BIKES_FILE), data);
+        BikeRentalSystem.writeCustomers(dir.resolve(BikeRentalSystem.CUSTOMERS_FILE), data);
+        BikeRentalSystem.writeRentals(dir.resolve(BikeRentalSystem.RENTALS_FILE), data);
+        BikeRentalSystem.SnapshotFile.write(dir.resolve(BikeRentalSystem.SNAPSHOT_FILE), data, true);
+        data = null;
+        System.out.printf(Locale.ROOT, "%,d rentals: rentals.txt %,d bytes, snapshot.bin %,d bytes%n", rentalCount,
+                Files.size(dir.resolve(BikeRentalSystem.RENTALS_FILE)), Files.size(dir.resolve(BikeRentalSystem.SNAPSHOT_FILE)));
+        long text = Long.MAX_VALUE, snap = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            BikeRentalSystem.DataStore s = new BikeRentalSystem.DataStore();
+            System.gc();
+            long t0 = System.nanoTime();
+            BikeRentalSystem.loadBikes(dir.resolve(BikeRentalSystem.BIKES_FILE), s);
+            BikeRentalSystem.loadCustomers(dir.resolve(BikeRentalSystem.CUSTOMERS_FILE), s);
+            BikeRentalSystem.loadRentals(dir.resolve(BikeRentalSystem.RENTALS_FILE), s);
+            text = Math.min(text, System.nanoTime() - t0);
+            s = new BikeRentalSystem.DataStore();
+            System.gc();
+            t0 = System.nanoTime();
+            BikeRentalSystem.SnapshotFile.read(dir.resolve(BikeRentalSystem.SNAPSHOT_FILE), s, true);
+            snap = Math.min(snap, System.nanoTime() - t0);
+        }
+        System.out.printf(Locale.ROOT, "text loaders: %d ms, snapshot: %d ms (best of 5)%n", text / 1_000_000, snap / 1_000_000);
+        for (String f : new String[]{BikeRentalSystem.BIKES_FILE, BikeRentalSystem.CUSTOMERS_FILE, BikeRentalSystem.RENTALS_FILE, BikeRentalSystem.SNAPSHOT_FILE}) Files.deleteIfExists(dir.resolve(f));
+        Files.deleteIfExists(dir);
+    }
+
+    // Rent/return cycles through a writer on each backend, timed until the writer has saved all of them.
+    // The database defaults to an H2 file next to the flat files; -Dbikerental.jdbcUrl picks another.
+    static void compareStorage(int cycles, int rentalCount) throws IOException {
+        Path dir = Files.createTempDirectory("bikerental-storage");
+        String url = System.getProperty("bikerental.jdbcUrl", "");
+        List<BikeRentalSystem.Storage> backends = Arrays.asList(new BikeRentalSystem.FlatFileStorage(dir, true),
+                new BikeRentalSystem.JdbcStorage(url.isEmpty() ? "jdbc:h2:" + dir.toAbsolutePath().resolve("bench") : url, "bench", true));
+        try {
+            for (BikeRentalSystem.Storage storage : backends) {
+                BikeRentalSystem.DataStore data = BikeRentalTools.sampleData(rentalCount, 42);
+                long t0 = System.nanoTime();
+                try {
+                    for (BikeRentalSystem.PersistenceWriter.Dirty part : BikeRentalSystem.PersistenceWriter.Dirty.values()) storage.save(part, data);
+                    storage.sync();
+                } catch (IOException e) {
+                    System.out.println(storage + ": skipped, " + e.getMessage());
+                    continue;
+                }
+                long fullSave = System.nanoTime() - t0;
+                BikeRentalSystem.RentalJournal journal = BikeRentalSystem.openJournal(dir, storage);
+                BikeRentalSystem.PersistenceWriter writer = new BikeRentalSystem.PersistenceWriter(data, storage, journal, null, null, BikeRentalSystem.COMPACT_EVERY,
+                        Long.getLong("bikerental.syncMillis", 1000L), () -> {});
+                BikeRentalSystem.RentalEngine engine = new BikeRentalSystem.RentalEngine(data, new BikeRentalSystem.SimplePolicy());
+                engine.addListener(writer);
+                writer.start();
+                List<BikeRentalSystem.Customer> customers = data.customers();
+                List<String> free = new ArrayList<>();
+                for (BikeRentalSystem.Bike b : data.bikes()) if (b.isAvailable()) free.add(b.getBikeId());
+                long[] latency = new long[cycles];
+                t0 = System.nanoTime();
+                for (int i = 0; i < cycles; i++) {
+                    long start = System.nanoTime();
+                    BikeRentalSystem.Rental r = engine.rent(customers.get(i % customers.size()).getLicense(), free.get(i % free.size()), 1 + i % 7);
+                    engine.returnBike(r.rentalId(), "No Damage");
+                    latency[i] = System.nanoTime() - start;
+                }
+                writer.close(600_000);
+                long elapsed = System.nanoTime() - t0;
+                Arrays.sort(latency);
+                System.out.printf(Locale.ROOT, "%s%n  full save %,d ms; %,d rent/return cycles saved in %,d ms = %,.0f cycles/s;"
+                                + " call latency p50 %.1f us, p99 %.1f us%s%n", storage, fullSave / 1_000_000, cycles, elapsed / 1_000_000,
+                        cycles / (elapsed / 1e9), latency[cycles / 2] / 1e3, latency[cycles * 99 / 100] / 1e3,
+                        writer.lastFailure() == null ? "" : "; last save failed: " + writer.lastFailure().getMessage());
+            }
+        } catch (BikeRentalSystem.RentalException e) {
+            throw new IOException(e);
+        } finally {
+            for (BikeRentalSystem.Storage storage : backends) storage.close();
+            try (java.util.stream.Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+}
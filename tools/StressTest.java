@@ -0,0 +1,93 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// --stress: threads of random rent/return/register calls on one store, checked for double rentals and lost returns.
+final class StressTest {
+    private StressTest() {}
+
+    static boolean run(int threads, int opsPerThread) {
+        BikeRentalSystem.DataStore data = new BikeRentalSystem.DataStore();
+        int bikeCount = 16;
+        for (int i = 0; i < bikeCount; i++) data.addBike(new BikeRentalSystem.Bike("B" + (101 + i), "Stress " + i, 500));
+        for (int i = 0; i < 64; i++) data.addCustomer(new BikeRentalSystem.Customer("C" + (i + 1), "Rider " + i, 30, "JK01" + (20000000 + i)));
+        BikeRentalSystem.RentalEngine engine = new BikeRentalSystem.RentalEngine(data, new BikeRentalSystem.SimplePolicy());
+        java.util.concurrent.atomic.AtomicInteger returnEvents = new java.util.concurrent.atomic.AtomicInteger();
+        engine.addListener(new BikeRentalSystem.RentalEngine.Listener() {
+            @Override public void returned(BikeRentalSystem.Rental r) { returnEvents.incrementAndGet(); }
+        });
+        java.util.concurrent.atomic.AtomicInteger[] holders = new java.util.concurrent.atomic.AtomicInteger[bikeCount];
+        for (int i = 0; i < bikeCount; i++) holders[i] = new java.util.concurrent.atomic.AtomicInteger();
+        java.util.concurrent.atomic.AtomicInteger rents = new java.util.concurrent.atomic.AtomicInteger();
+        java.util.concurrent.atomic.AtomicInteger returns = new java.util.concurrent.atomic.AtomicInteger();
+        java.util.concurrent.atomic.AtomicInteger registrations = new java.util.concurrent.atomic.AtomicInteger();
+        java.util.concurrent.atomic.AtomicInteger errors = new java.util.concurrent.atomic.AtomicInteger();
+        java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            Thread w = new Thread(() -> {
+                Random rnd = new Random(seed);
+                Deque<BikeRentalSystem.Rental> held = new ArrayDeque<>();
+                BikeRentalSystem.Rental lastReturned = null;
+                try {
+                    start.await();
+                    for (int op = 0; op < opsPerThread || !held.isEmpty(); op++) {
+                        int roll = op < opsPerThread ? rnd.nextInt(100) : 99;
+                        if (roll < 45) {
+                            int bike = rnd.nextInt(bikeCount);
+                            try {
+                                BikeRentalSystem.Rental r = engine.rent("JK01" + (20000000 + rnd.nextInt(64)), "B" + (101 + bike), 1 + rnd.nextInt(5));
+                                if (holders[bike].incrementAndGet() != 1) errors.incrementAndGet();
+                                rents.incrementAndGet();
+                                held.push(r);
+                            } catch (BikeRentalSystem.RentalException ignored) {}
+                        } else if (roll < 47) {
+                            engine.register("Walk-in " + seed + "-" + op, 25, "JK02" + (30000000 + op));
+                            registrations.incrementAndGet();
+                        } else if (roll < 50 && lastReturned != null) {
+                            try {
+                                engine.returnBike(lastReturned.rentalId(), "No Damage");
+                                errors.incrementAndGet();
+                            } catch (BikeRentalSystem.RentalException expected) {}
+                        } else if (!held.isEmpty()) {
+                            BikeRentalSystem.Rental r = held.pop();
+                            holders[Integer.parseInt(r.bikeId().substring(1)) - 101].decrementAndGet();
+                            engine.returnBike(r.rentalId(), "Minor Scratch");
+                            returns.incrementAndGet();
+                            lastReturned = r;
+                        }
+                    }
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                }
+            }, "stress-" + t);
+            workers.add(w);
+            w.start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        for (Thread w : workers) {
+            try { w.join(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+        long elapsed = System.nanoTime() - t0;
+        Set<String> rentalIds = new HashSet<>(), customerIds = new HashSet<>();
+        int ongoing = 0;
+        for (BikeRentalSystem.Rental r : data.rentals()) {
+            rentalIds.add(r.rentalId());
+            if (!r.returned()) ongoing++;
+        }
+        for (BikeRentalSystem.Customer c : data.customers()) customerIds.add(c.getId());
+        int busyBikes = 0;
+        for (BikeRentalSystem.Bike b : data.bikes()) if (!b.isAvailable()) busyBikes++;
+        boolean ok = errors.get() == 0 && ongoing == 0 && busyBikes == 0
+                && rents.get() == data.rentalCount() && rentalIds.size() == data.rentalCount()
+                && returns.get() == rents.get() && returnEvents.get() == returns.get()
+                && customerIds.size() == data.customerCount() && data.customerCount() == 64 + registrations.get();
+        System.out.printf(Locale.ROOT, "%d threads, %d bikes: %,d rents, %,d returns, %,d registrations in %d ms%n",
+                threads, bikeCount, rents.get(), returns.get(), registrations.get(), elapsed / 1_000_000);
+        System.out.printf(Locale.ROOT, "violations %d, ongoing %d, bikes still out %d, unique rental ids %,d/%,d -> %s%n",
+                errors.get(), ongoing, busyBikes, rentalIds.size(), data.rentalCount(), ok ? "PASS" : "FAIL");
+        return ok;
+    }
+}